@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.data;
+
+import java.util.Iterator;
+import java.util.Objects;
+
+/**
+ * A forward-only cursor over {@link DataPoint data points} that holds resources which have to be released by
+ * {@link #close()}.
+ *
+ * Implementations may throw a {@link org.hibernate.HibernateException} from {@link #hasNext()} and {@link #next()}.
+ *
+ * @author Christian Autermann
+ */
+public interface DataCursor extends Iterator<DataPoint>, AutoCloseable {
+
+    /**
+     * Releases the resources held by this cursor. Calling this method more than once has no effect.
+     */
+    @Override
+    void close();
+
+    /**
+     * Cancels the database statements that are currently executed for this cursor, e.g. because the client is no
+     * longer connected. In contrast to {@link #close()}, this method may be called from any thread. The cursor still
+     * has to be closed afterwards.
+     */
+    default void cancel() {
+        // nothing is executed by default
+    }
+
+    /**
+     * Returns a cursor over the same data points that additionally runs the action when it is closed.
+     *
+     * @param action the action
+     *
+     * @return the cursor
+     */
+    default DataCursor onClose(Runnable action) {
+        Objects.requireNonNull(action);
+        DataCursor cursor = this;
+        return new DataCursor() {
+            @Override
+            public boolean hasNext() {
+                return cursor.hasNext();
+            }
+
+            @Override
+            public DataPoint next() {
+                return cursor.next();
+            }
+
+            @Override
+            public void cancel() {
+                cursor.cancel();
+            }
+
+            @Override
+            public void close() {
+                try {
+                    cursor.close();
+                } finally {
+                    action.run();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.data;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.HibernateException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces identical concurrent queries, so a single source cursor feeds the cursors of all requests.
+ * <p>
+ * The data points read from the source are kept in a shared buffer. A request joining a running query replays the
+ * buffered data points before it continues with the data points of the source. Requests may only join until the
+ * source returned more data points than the capacity of the buffer. Afterwards, the data points read by all cursors
+ * are discarded and a cursor that is ahead by the capacity waits for the slowest cursor. If it waited longer than the
+ * timeout, the cursors lagging behind by the capacity are detached from the source and fail when they are read
+ * again, so a stalled or never read cursor does not block the other requests. The source cursor is read by the
+ * threads consuming the cursors and is closed as soon as the last cursor is closed.
+ *
+ * @author Christian Autermann
+ */
+public class DataCursorCoalescer {
+    private static final Logger LOG = LoggerFactory.getLogger(DataCursorCoalescer.class);
+    private static final int BATCH_SIZE = 256;
+    private final Map<String, SharedSource> sources = new HashMap<>();
+    private final int capacity;
+    private final long timeout;
+
+    /**
+     * Create a new {@code DataCursorCoalescer}.
+     *
+     * @param capacity the number of data points that are buffered for joining requests
+     * @param timeout  the time in milliseconds a cursor waits for lagging cursors until they are detached
+     */
+    public DataCursorCoalescer(int capacity, long timeout) {
+        if (capacity <= 0 || timeout <= 0) {
+            throw new IllegalArgumentException("capacity and timeout have to be positive");
+        }
+        this.capacity = capacity;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Open a cursor for a query. If an identical query is running and may still be joined, the cursor reads the
+     * data points of that query. Otherwise a new source cursor is opened as soon as the data is first read; errors
+     * opening it are thrown by {@link DataCursor#hasNext()} as {@link HibernateException}.
+     *
+     * @param key    the canonical representation of the query
+     * @param source the function opening the source cursor
+     *
+     * @return the cursor
+     */
+    public DataCursor open(String key, Callable<DataCursor> source) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(source);
+        synchronized (this.sources) {
+            SharedSource shared = this.sources.get(key);
+            if (shared != null) {
+                DataCursor cursor = shared.join();
+                if (cursor != null) {
+                    LOG.debug("Joining running query");
+                    return cursor;
+                }
+            }
+            shared = new SharedSource(key, source);
+            this.sources.put(key, shared);
+            return shared.join();
+        }
+    }
+
+    /**
+     * Stop new requests from joining the query.
+     *
+     * @param shared the query
+     */
+    private void detach(SharedSource shared) {
+        synchronized (this.sources) {
+            this.sources.remove(shared.key, shared);
+        }
+    }
+
+    /**
+     * A source cursor shared by several cursors.
+     */
+    private class SharedSource {
+        private final String key;
+        private final Callable<DataCursor> opener;
+        private final List<DataPoint> buffer = new ArrayList<>();
+        private final List<SharedCursor> cursors = new ArrayList<>();
+        private DataCursor source;
+        private long offset;
+        private boolean joinable = true;
+        private boolean reading;
+        private boolean exhausted;
+        private boolean closed;
+        private RuntimeException error;
+
+        SharedSource(String key, Callable<DataCursor> opener) {
+            this.key = key;
+            this.opener = opener;
+        }
+
+        /**
+         * Create a cursor starting at the first data point of the source.
+         *
+         * @return the cursor or {@code null} if the query can not be joined anymore
+         */
+        synchronized DataCursor join() {
+            if (!this.joinable || this.closed) {
+                return null;
+            }
+            SharedCursor cursor = new SharedCursor(this);
+            this.cursors.add(cursor);
+            return cursor;
+        }
+
+        /**
+         * Get the next data point for a cursor, reading the source if the cursor consumed the buffer.
+         *
+         * @param cursor the cursor
+         *
+         * @return the data point or {@code null} if the source is exhausted
+         *
+         * @throws HibernateException if the cursor was detached because it lagged behind
+         */
+        DataPoint get(SharedCursor cursor) {
+            long position = cursor.position;
+            long deadline = 0;
+            synchronized (this) {
+                while (true) {
+                    if (cursor.detached) {
+                        throw new HibernateException("The request fell behind the identical requests it joined");
+                    }
+                    if (position < this.offset + this.buffer.size()) {
+                        return this.buffer.get((int) (position - this.offset));
+                    }
+                    if (this.error != null) {
+                        throw this.error;
+                    }
+                    if (this.exhausted || this.closed) {
+                        return null;
+                    }
+                    boolean lagging = !this.joinable && position - getMinimumPosition() >= capacity;
+                    if (!this.reading && !lagging) {
+                        this.reading = true;
+                        break;
+                    }
+                    long wait = 0;
+                    if (lagging) {
+                        long now = System.nanoTime();
+                        if (deadline == 0) {
+                            deadline = now + TimeUnit.MILLISECONDS.toNanos(timeout);
+                        } else if (now - deadline >= 0) {
+                            detachLagging(position);
+                            continue;
+                        }
+                        wait = Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - now));
+                    }
+                    try {
+                        wait(wait);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new HibernateException("Interrupted while waiting for data", e);
+                    }
+                }
+            }
+            read();
+            return get(cursor);
+        }
+
+        /**
+         * Detach the cursors that lag behind a waiting cursor by the capacity.
+         *
+         * @param position the position of the waiting cursor
+         */
+        private void detachLagging(long position) {
+            Iterator<SharedCursor> iter = this.cursors.iterator();
+            while (iter.hasNext()) {
+                SharedCursor cursor = iter.next();
+                if (position - cursor.position >= capacity) {
+                    LOG.warn("Detaching request lagging {} values behind the identical requests it joined",
+                             position - cursor.position);
+                    cursor.detached = true;
+                    iter.remove();
+                }
+            }
+            trim();
+            notifyAll();
+        }
+
+        /**
+         * Read the next batch of data points from the source. The source is read without holding the lock, so the
+         * other cursors can consume the buffer meanwhile.
+         */
+        private void read() {
+            List<DataPoint> batch = new ArrayList<>(BATCH_SIZE);
+            RuntimeException failure = null;
+            boolean end = false;
+            try {
+                if (this.source == null) {
+                    this.source = this.opener.call();
+                }
+                while (batch.size() < BATCH_SIZE && this.source.hasNext()) {
+                    batch.add(this.source.next());
+                }
+                end = batch.size() < BATCH_SIZE;
+            } catch (RuntimeException e) {
+                failure = e;
+            } catch (Exception e) {
+                failure = new HibernateException(e);
+            }
+            boolean detach;
+            synchronized (this) {
+                this.buffer.addAll(batch);
+                this.exhausted = end;
+                this.error = failure;
+                this.reading = false;
+                // joining requests have to replay everything, so the buffer can only be trimmed afterwards
+                detach = this.joinable && this.offset + this.buffer.size() > capacity;
+                if (detach) {
+                    this.joinable = false;
+                }
+                trim();
+                notifyAll();
+            }
+            if (detach) {
+                detach(this);
+            }
+        }
+
+        /**
+         * Discard the data points that were read by all cursors.
+         */
+        private void trim() {
+            if (this.joinable) {
+                return;
+            }
+            int consumed = (int) (getMinimumPosition() - this.offset);
+            // only trim larger blocks to amortize the copying
+            if (consumed > 0 && (consumed >= this.buffer.size() / 2 || this.cursors.isEmpty())) {
+                this.buffer.subList(0, Math.min(consumed, this.buffer.size())).clear();
+                this.offset += consumed;
+            }
+        }
+
+        private long getMinimumPosition() {
+            return this.cursors.stream().mapToLong(c -> c.position).min().orElse(this.offset + this.buffer.size());
+        }
+
+        /**
+         * Notify the source that a cursor advanced.
+         */
+        synchronized void advanced() {
+            if (!this.joinable) {
+                trim();
+                notifyAll();
+            }
+        }
+
+        /**
+         * Cancel the source if the cursor is the only cursor reading it.
+         */
+        void cancel() {
+            DataCursor cursor;
+            synchronized (this) {
+                cursor = this.cursors.size() == 1 ? this.source : null;
+            }
+            if (cursor != null) {
+                cursor.cancel();
+            }
+        }
+
+        /**
+         * Remove a cursor and close the source if it was the last cursor.
+         *
+         * @param cursor the cursor
+         */
+        void remove(SharedCursor cursor) {
+            DataCursor close;
+            synchronized (this) {
+                if (!this.cursors.remove(cursor)) {
+                    return;
+                }
+                if (!this.cursors.isEmpty()) {
+                    trim();
+                    notifyAll();
+                    return;
+                }
+                this.closed = true;
+                this.buffer.clear();
+                close = this.source;
+                notifyAll();
+            }
+            detach(this);
+            if (close != null) {
+                close.close();
+            }
+        }
+    }
+
+    /**
+     * Cursor of a single request reading a shared source.
+     */
+    private static class SharedCursor implements DataCursor {
+        private final SharedSource shared;
+        private volatile long position;
+        private volatile boolean detached;
+        private DataPoint next;
+        private boolean closed;
+
+        SharedCursor(SharedSource shared) {
+            this.shared = shared;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.next == null && !this.closed) {
+                try {
+                    this.next = this.shared.get(this);
+                } catch (RuntimeException e) {
+                    close();
+                    throw e;
+                }
+                if (this.next == null) {
+                    close();
+                } else {
+                    ++this.position;
+                    this.shared.advanced();
+                }
+            }
+            return this.next != null;
+        }
+
+        @Override
+        public DataPoint next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            DataPoint current = this.next;
+            this.next = null;
+            return current;
+        }
+
+        @Override
+        public void cancel() {
+            this.shared.cancel();
+        }
+
+        @Override
+        public void close() {
+            if (!this.closed) {
+                this.closed = true;
+                this.next = null;
+                this.shared.remove(this);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.data;
+
+import java.time.Instant;
+import java.util.Date;
+
+/**
+ * A single row of the {@code dataview} table consisting only of primitive values. Sensor, device and platform have to
+ * be resolved using the {@link SensorCache}.
+ *
+ * @author Christian Autermann
+ */
+public final class DataPoint {
+    private final int sensor;
+    private final long time;
+    private final double value;
+    private final double longitude;
+    private final double latitude;
+
+    /**
+     * Create a new {@code DataPoint}.
+     *
+     * @param sensor    the sensor id
+     * @param time      the time in milliseconds since the epoch
+     * @param value     the value
+     * @param longitude the longitude or {@link Double#NaN}
+     * @param latitude  the latitude or {@link Double#NaN}
+     */
+    public DataPoint(int sensor, long time, double value, double longitude, double latitude) {
+        this.sensor = sensor;
+        this.time = time;
+        this.value = value;
+        this.longitude = longitude;
+        this.latitude = latitude;
+    }
+
+    /**
+     * Get the id of the sensor.
+     *
+     * @return the sensor id
+     */
+    public int getSensor() {
+        return sensor;
+    }
+
+    /**
+     * Get the time of this data point.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Get the value of this data point.
+     *
+     * @return the value
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * Get the longitude of this data point.
+     *
+     * @return the longitude or {@link Double#NaN}
+     */
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Get the latitude of this data point.
+     *
+     * @return the latitude or {@link Double#NaN}
+     */
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Checks if this data point has a position.
+     *
+     * @return if the longitude and latitude are present
+     */
+    public boolean hasLocation() {
+        return !Double.isNaN(longitude) && !Double.isNaN(latitude);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DataPoint{sensor=%d, time=%s, value=%s, longitude=%s, latitude=%s}",
+                             sensor, Instant.ofEpochMilli(time), value, longitude, latitude);
+    }
+
+    /**
+     * Create a new {@code DataPoint} from a projected tuple of the form
+     * {@code [sensor id, time, value, longitude, latitude]}.
+     *
+     * @param tuple the tuple
+     *
+     * @return the data point
+     */
+    public static DataPoint fromTuple(Object[] tuple) {
+        return new DataPoint(((Number) tuple[0]).intValue(),
+                             ((Date) tuple[1]).getTime(),
+                             ((Number) tuple[2]).doubleValue(),
+                             toDouble(tuple[3]),
+                             toDouble(tuple[4]));
+    }
+
+    private static double toDouble(Object value) {
+        return value == null ? Double.NaN : ((Number) value).doubleValue();
+    }
+}
@@ -1,11 +1,14 @@
 package org.n52.sensorweb.awi.data;
 
+import java.util.List;
 import java.util.Set;
 
 import javax.annotation.Nonnull;
 
 import org.joda.time.DateTime;
 
+import org.n52.sensorweb.awi.data.entities.Expedition;
+
 /**
  * A simple cache to map from platforms to feature identifiers.
  *
@@ -32,4 +35,14 @@ public interface FeatureCache {
      */
     @Nonnull
     Set<String> getFeatureIds(@Nonnull String platform);
+
+    /**
+     * Get the expeditions with the specified feature identifier.
+     *
+     * @param feature the feature identifier
+     *
+     * @return the expeditions or an empty list if the feature is not an expedition
+     */
+    @Nonnull
+    List<Expedition> getExpeditions(@Nonnull String feature);
 }
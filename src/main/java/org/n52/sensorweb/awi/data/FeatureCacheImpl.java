@@ -1,48 +1,58 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
 package org.n52.sensorweb.awi.data;
 
+import static java.util.stream.Collectors.collectingAndThen;
 import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.mapping;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.Timer;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.Collector;
-import java.util.stream.Stream;
 
 import javax.inject.Singleton;
 
 import org.hibernate.SessionFactory;
 import org.joda.time.DateTime;
 
-import org.n52.janmayen.IntervalMap;
-import org.n52.janmayen.IntervalTree;
-import org.n52.janmayen.function.Functions;
 import org.n52.janmayen.lifecycle.Constructable;
 import org.n52.sensorweb.awi.data.entities.Expedition;
 import org.n52.sensorweb.awi.util.DelegatingTimerTask;
 import org.n52.sos.ds.hibernate.util.AbstractSessionDao;
 
 /**
- * {@code FeatureCache} implemnetation that reads all feature identifiers from the database and keeps the in an
- * {@link IntervalMap}.
+ * {@code FeatureCache} implemnetation that reads all feature identifiers from the database and keeps them in an
+ * immutable snapshot. Readers never block, as a new snapshot is created on every update and published at once.
  *
  * @author Christian Autermann
  */
 @Singleton
 public class FeatureCacheImpl extends AbstractSessionDao implements Constructable, FeatureCache {
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
     private final long updateInterval;
     private final Timer timer = new Timer(true);
-    private Map<String, Set<String>> byPlatform;
-    private Map<String, IntervalMap<DateTime, String>> byTime;
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyMap(), Collections.emptyMap(),
+                                                      Collections.emptyMap());
 
     /**
      * Creates a new {@code FeatureCache}.
@@ -58,41 +68,25 @@ public class FeatureCacheImpl extends AbstractSessionDao implements Constructabl
     @Override
     public Set<String> getFeatureIds(String platform) {
         Objects.requireNonNull(platform);
-        this.lock.readLock().lock();
-        try {
-            return getByPlatform(platform).collect(toSet());
-        } finally {
-            this.lock.readLock().unlock();
-        }
+        return this.snapshot.byPlatform.getOrDefault(platform, Collections.singleton(platform));
     }
 
     @Override
     public String getFeatureId(String platform, DateTime time) {
         Objects.requireNonNull(platform);
         Objects.requireNonNull(time);
-        this.lock.readLock().lock();
-        try {
-            return this.byTime.getOrDefault(platform, IntervalMap.universal(platform))
-                    .getOrDefault(time, platform);
-        } finally {
-            this.lock.readLock().unlock();
+        Intervals intervals = this.snapshot.byTime.get(platform);
+        if (intervals == null) {
+            return platform;
         }
+        String feature = intervals.get(time.getMillis());
+        return feature == null ? platform : feature;
     }
 
-    /**
-     * Get a stream of feature identifiers for the specified platform.
-     *
-     * @param platform the platform
-     *
-     * @return the feature identifiers
-     */
-    private Stream<String> getByPlatform(String platform) {
-        this.lock.readLock().lock();
-        try {
-            return this.byPlatform.getOrDefault(platform, Collections.singleton(platform)).stream();
-        } finally {
-            this.lock.readLock().unlock();
-        }
+    @Override
+    public List<Expedition> getExpeditions(String feature) {
+        Objects.requireNonNull(feature);
+        return this.snapshot.byName.getOrDefault(feature, Collections.emptyList());
     }
 
     @Override
@@ -120,36 +114,101 @@ public class FeatureCacheImpl extends AbstractSessionDao implements Constructabl
      * Update the cache.
      */
     private void update() {
-        this.lock.writeLock().lock();
-        try {
-            @SuppressWarnings("unchecked")
-            List<Expedition> expeditions = query(s -> s.createCriteria(Expedition.class)
-                    .setComment("Caching expedition time intervals").list());
-            this.byTime = expeditions.stream()
-                    .collect(groupingBy(Expedition::getPlatform, Collector.of(HashSet::new, Set::add,
-                                                                              Functions.mergeLeft(Set::addAll),
-                                                                              this::createIntervalMap)));
-            this.byPlatform = expeditions.stream()
-                    .collect(groupingBy(Expedition::getPlatform, mapping(Expedition::getName, toSet())));
-        } finally {
-            this.lock.writeLock().unlock();
+        @SuppressWarnings("unchecked")
+        List<Expedition> expeditions = query(s -> s.createCriteria(Expedition.class)
+                .setComment("Caching expedition time intervals").list());
+        Map<String, Intervals> byTime = expeditions.stream()
+                .collect(groupingBy(Expedition::getPlatform, collectingAndThen(toList(), Intervals::new)));
+        Map<String, Set<String>> byPlatform = expeditions.stream()
+                .collect(groupingBy(Expedition::getPlatform,
+                                    collectingAndThen(mapping(Expedition::getName, toSet()),
+                                                      Collections::unmodifiableSet)));
+        Map<String, List<Expedition>> byName = expeditions.stream()
+                .collect(groupingBy(Expedition::getName,
+                                    collectingAndThen(toList(), Collections::unmodifiableList)));
+        this.snapshot = new Snapshot(byPlatform, byTime, byName);
+    }
+
+    /**
+     * Immutable state of the cache.
+     */
+    private static class Snapshot {
+        private final Map<String, Set<String>> byPlatform;
+        private final Map<String, Intervals> byTime;
+        private final Map<String, List<Expedition>> byName;
+
+        /**
+         * Creates a new {@code Snapshot}.
+         *
+         * @param byPlatform the feature identifiers by platform
+         * @param byTime     the feature intervals by platform
+         * @param byName     the expeditions by feature identifier
+         */
+        Snapshot(Map<String, Set<String>> byPlatform, Map<String, Intervals> byTime,
+                 Map<String, List<Expedition>> byName) {
+            this.byPlatform = byPlatform;
+            this.byTime = byTime;
+            this.byName = byName;
         }
     }
 
     /**
-     * Create a {@link IntervalMap} for the expeditions.
-     *
-     * @param t the expeditions
-     *
-     * @return the interval map
+     * The expedition intervals of a platform sorted by their begin. As expeditions may overlap, the maximum end of
+     * all preceding intervals is stored to know when to stop searching backwards.
      */
-    private IntervalMap<DateTime, String> createIntervalMap(Set<Expedition> t) {
-        IntervalTree<DateTime, String> tree = new IntervalTree<>();
-        t.stream().filter(Expedition::isValid)
-                .forEach(feature -> tree.add(new DateTime(feature.getBegin()),
-                                             new DateTime(feature.getEnd()),
-                                             feature.getName()));
-        return tree;
+    private static class Intervals {
+        private final long[] begins;
+        private final long[] ends;
+        private final long[] maxEnds;
+        private final String[] names;
+
+        /**
+         * Creates a new {@code Intervals}.
+         *
+         * @param expeditions the expeditions of a platform
+         */
+        Intervals(List<Expedition> expeditions) {
+            Expedition[] valid = expeditions.stream().filter(Expedition::isValid)
+                    .sorted(Comparator.comparing(Expedition::getBegin))
+                    .toArray(Expedition[]::new);
+            this.begins = new long[valid.length];
+            this.ends = new long[valid.length];
+            this.maxEnds = new long[valid.length];
+            this.names = new String[valid.length];
+            long maxEnd = Long.MIN_VALUE;
+            for (int i = 0; i < valid.length; ++i) {
+                this.begins[i] = valid[i].getBegin().getTime();
+                this.ends[i] = valid[i].getEnd().getTime();
+                this.names[i] = valid[i].getName();
+                maxEnd = Math.max(maxEnd, this.ends[i]);
+                this.maxEnds[i] = maxEnd;
+            }
+        }
+
+        /**
+         * Get the name of the expedition containing the time.
+         *
+         * @param time the time in milliseconds since the epoch
+         *
+         * @return the name or {@code null} if no expedition contains the time
+         */
+        String get(long time) {
+            int i = Arrays.binarySearch(this.begins, time);
+            // the last interval beginning at or before the time
+            if (i < 0) {
+                i = -(i + 1) - 1;
+            } else {
+                while (i + 1 < this.begins.length && this.begins[i + 1] == time) {
+                    ++i;
+                }
+            }
+            for (; i >= 0 && this.maxEnds[i] >= time; --i) {
+                if (this.ends[i] >= time) {
+                    return this.names[i];
+                }
+            }
+            return null;
+        }
     }
 
 }
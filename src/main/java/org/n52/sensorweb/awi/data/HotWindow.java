@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.data;
+
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+/**
+ * In-memory store of the recent values of all published sensors.
+ *
+ * @author Christian Autermann
+ */
+public interface HotWindow {
+    /**
+     * Get the begin of the time range that is completely contained in this window. Values after this time can be
+     * retrieved from this window instead of the database.
+     *
+     * @return the time in milliseconds since the epoch or {@link Long#MAX_VALUE} if the window is not yet loaded
+     */
+    long getBegin();
+
+    /**
+     * Get the time of the last successful update. Values observed after this time may be missing from this window
+     * until the next update.
+     *
+     * @return the time in milliseconds since the epoch or {@link Long#MIN_VALUE} if the window is not yet loaded
+     */
+    long getEnd();
+
+    /**
+     * Get the ids of all sensors that have values in this window.
+     *
+     * @return the sensor ids
+     */
+    @Nonnull
+    Set<Integer> getSensors();
+
+    /**
+     * Get the values of a sensor in the specified time range ordered by time.
+     *
+     * @param sensor the sensor id
+     * @param from   the begin of the time range in milliseconds since the epoch (inclusive)
+     * @param to     the end of the time range in milliseconds since the epoch (inclusive)
+     *
+     * @return the data points
+     */
+    @Nonnull
+    List<DataPoint> getData(int sensor, long from, long to);
+}
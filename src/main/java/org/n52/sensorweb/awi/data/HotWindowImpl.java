@@ -0,0 +1,437 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToIntFunction;
+
+import javax.inject.Singleton;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.n52.janmayen.lifecycle.Constructable;
+import org.n52.sensorweb.awi.data.entities.Data;
+import org.n52.sensorweb.awi.data.entities.Device;
+import org.n52.sensorweb.awi.data.entities.Platform;
+import org.n52.sensorweb.awi.data.entities.Sensor;
+import org.n52.sensorweb.awi.sos.QueryContext;
+import org.n52.sensorweb.awi.util.DelegatingTimerTask;
+
+/**
+ * {@code HotWindow} implementation that keeps the values of the last {@code window} minutes of every sensor in
+ * primitive arrays. The window is loaded completely and afterwards fed incrementally by polling the {@code dataview}
+ * for values after the latest known time. As values may be inserted with a delay, every update rereads the last
+ * {@code overlap} seconds and inserts values that are not yet known at their position in time. Values that are
+ * inserted with a larger delay are picked up by reloading the complete window every {@code reloadInterval} minutes.
+ * If an update fails, the window is emptied and not used until it was loaded again. A window that was not updated
+ * successfully for a whole reload interval, e.g. because an update hangs, is not used either.
+ *
+ * @author Christian Autermann
+ */
+@Singleton
+public class HotWindowImpl implements Constructable, HotWindow {
+    private static final Logger LOG = LoggerFactory.getLogger(HotWindowImpl.class);
+    private static final int BATCH_SIZE = 10000;
+    private final SessionFactory sessionFactory;
+    private final long window;
+    private final long updateInterval;
+    private final long overlap;
+    private final long reloadInterval;
+    private final Timer timer = new Timer(true);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Integer, Series> series = new HashMap<>();
+    private volatile long begin = Long.MAX_VALUE;
+    private volatile long end = Long.MIN_VALUE;
+    private long highWaterMark = Long.MIN_VALUE;
+    private long loaded = Long.MIN_VALUE;
+
+    /**
+     * Creates a new {@code HotWindowImpl}.
+     *
+     * @param sessionFactory the session factory
+     * @param window         the size of the window in minutes
+     * @param updateInterval the interval in seconds to poll for new values
+     * @param overlap        the time in seconds that is reread to catch delayed values
+     * @param reloadInterval the interval in minutes to reload the complete window
+     */
+    public HotWindowImpl(SessionFactory sessionFactory, long window, long updateInterval, long overlap,
+                         long reloadInterval) {
+        if (window <= 0 || updateInterval <= 0 || overlap < 0 || reloadInterval <= 0) {
+            throw new IllegalArgumentException("invalid window configuration");
+        }
+        this.sessionFactory = sessionFactory;
+        this.window = TimeUnit.MINUTES.toMillis(window);
+        this.updateInterval = TimeUnit.SECONDS.toMillis(updateInterval);
+        this.overlap = TimeUnit.SECONDS.toMillis(overlap);
+        this.reloadInterval = TimeUnit.MINUTES.toMillis(reloadInterval);
+    }
+
+    @Override
+    public void init() {
+        // the initial load may take a while, do not block the startup
+        this.timer.schedule(new DelegatingTimerTask(this::updateAndSchedule), 0);
+    }
+
+    @Override
+    public long getBegin() {
+        return isStale() ? Long.MAX_VALUE : this.begin;
+    }
+
+    @Override
+    public long getEnd() {
+        return isStale() ? Long.MIN_VALUE : this.end;
+    }
+
+    /**
+     * Checks if the last successful update is older than the reload interval.
+     *
+     * @return if the window may not be used
+     */
+    private boolean isStale() {
+        long last = this.end;
+        return last != Long.MIN_VALUE && System.currentTimeMillis() - last > this.reloadInterval;
+    }
+
+    @Override
+    public Set<Integer> getSensors() {
+        this.lock.readLock().lock();
+        try {
+            return new HashSet<>(this.series.keySet());
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<DataPoint> getData(int sensor, long from, long to) {
+        this.lock.readLock().lock();
+        try {
+            Series s = this.series.get(sensor);
+            return s == null ? Collections.emptyList() : s.get(sensor, from, to);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Update the window and schedule a new update.
+     */
+    private void updateAndSchedule() {
+        try {
+            update();
+        } catch (RuntimeException e) {
+            LOG.error("Error updating hot window", e);
+            disable();
+        } finally {
+            this.timer.schedule(new DelegatingTimerTask(this::updateAndSchedule), this.updateInterval);
+        }
+    }
+
+    /**
+     * Read the new values from the database and evict the values that left the window. The complete window is read
+     * if it is not loaded or the reload interval elapsed.
+     */
+    private void update() {
+        long now = System.currentTimeMillis();
+        long cutoff = now - this.window;
+        if (this.highWaterMark == Long.MIN_VALUE || now - this.loaded >= this.reloadInterval) {
+            // readers keep using the current values until the new ones are complete
+            Map<Integer, Series> reloaded = new HashMap<>();
+            long[] latest = { cutoff };
+            int count = read(cutoff, batch -> {
+                latest[0] = Math.max(latest[0], batch.get(batch.size() - 1).getTime());
+                return insert(reloaded, batch);
+            });
+            this.lock.writeLock().lock();
+            try {
+                this.series = reloaded;
+                this.highWaterMark = latest[0];
+            } finally {
+                this.lock.writeLock().unlock();
+            }
+            this.loaded = now;
+            LOG.info("Loaded hot window with {} values", count);
+        } else {
+            int count = read(this.highWaterMark - this.overlap, batch -> {
+                this.lock.writeLock().lock();
+                try {
+                    this.highWaterMark = Math.max(this.highWaterMark, batch.get(batch.size() - 1).getTime());
+                    return insert(this.series, batch);
+                } finally {
+                    this.lock.writeLock().unlock();
+                }
+            });
+            LOG.debug("Updated hot window with {} values", count);
+        }
+        evict(cutoff);
+        // values before the cutoff are evicted, values observed between it and the start of the update are complete
+        this.begin = cutoff;
+        this.end = now;
+    }
+
+    /**
+     * Read the values after the specified time from the database in batches ordered by time.
+     *
+     * @param from     the time in milliseconds since the epoch (exclusive)
+     * @param consumer the consumer of the non-empty batches, returning the number of inserted values
+     *
+     * @return the number of inserted values
+     */
+    private int read(long from, ToIntFunction<List<DataPoint>> consumer) {
+        QueryContext ctx = QueryContext.forData();
+        int count = 0;
+        StatelessSession session = this.sessionFactory.openStatelessSession();
+        try {
+            session.beginTransaction();
+            ScrollableResults results = session.createCriteria(Data.class)
+                    .setComment("Updating hot window")
+                    .createAlias(Data.SENSOR, ctx.getSensor())
+                    .createAlias(ctx.getSensorPath(Sensor.DEVICE), ctx.getDevice())
+                    .createAlias(ctx.getDevicePath(Device.PLATFORM), ctx.getPlatform())
+                    .add(Restrictions.isNotNull(ctx.getSensorPath(Sensor.CODE)))
+                    .add(Restrictions.isNotNull(ctx.getDevicePath(Device.CODE)))
+                    .add(Restrictions.isNotNull(ctx.getPlatformPath(Platform.CODE)))
+                    .add(Restrictions.eq(ctx.getPlatformPath(Platform.PUBLISHED), true))
+                    .add(Restrictions.gt(ctx.getDataPath(Data.TIME), new Date(from)))
+                    .addOrder(Order.asc(ctx.getDataPath(Data.TIME)))
+                    .setProjection(Projections.projectionList()
+                            .add(Projections.property(ctx.getSensorPath(Sensor.ID)))
+                            .add(Projections.property(ctx.getDataPath(Data.TIME)))
+                            .add(Projections.property(ctx.getDataPath(Data.VALUE)))
+                            .add(Projections.property(ctx.getDataPath(Data.LONGITUDE)))
+                            .add(Projections.property(ctx.getDataPath(Data.LATITUDE))))
+                    .setReadOnly(true)
+                    .setFetchSize(BATCH_SIZE)
+                    .scroll(ScrollMode.FORWARD_ONLY);
+            try {
+                List<DataPoint> batch = new ArrayList<>(BATCH_SIZE);
+                while (results.next()) {
+                    batch.add(DataPoint.fromTuple(results.get()));
+                    if (batch.size() == BATCH_SIZE) {
+                        count += consumer.applyAsInt(batch);
+                        batch.clear();
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    count += consumer.applyAsInt(batch);
+                }
+            } finally {
+                results.close();
+            }
+        } finally {
+            session.close();
+        }
+        return count;
+    }
+
+    /**
+     * Insert the data points into the series.
+     *
+     * @param target the series by sensor id
+     * @param batch  the data points
+     *
+     * @return the number of inserted data points
+     */
+    private static int insert(Map<Integer, Series> target, List<DataPoint> batch) {
+        int count = 0;
+        for (DataPoint point : batch) {
+            if (target.computeIfAbsent(point.getSensor(), id -> new Series()).insert(point)) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Empty the window, so that requests are answered by the database until it is loaded again.
+     */
+    private void disable() {
+        this.begin = Long.MAX_VALUE;
+        this.end = Long.MIN_VALUE;
+        this.lock.writeLock().lock();
+        try {
+            this.series = new HashMap<>();
+            this.highWaterMark = Long.MIN_VALUE;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove all values before the cutoff.
+     *
+     * @param cutoff the time in milliseconds since the epoch
+     */
+    private void evict(long cutoff) {
+        this.lock.writeLock().lock();
+        try {
+            this.series.values().removeIf(s -> s.evict(cutoff));
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The values of a single sensor as a growable ring of primitive arrays.
+     */
+    private static class Series {
+        private static final int INITIAL_CAPACITY = 64;
+        private long[] times = new long[INITIAL_CAPACITY];
+        private double[] values = new double[INITIAL_CAPACITY];
+        private double[] longitudes = new double[INITIAL_CAPACITY];
+        private double[] latitudes = new double[INITIAL_CAPACITY];
+        private int offset;
+        private int size;
+
+        /**
+         * Insert the data point ordered by time and value, unless it is already contained.
+         *
+         * @param point the data point
+         *
+         * @return if the data point was inserted
+         */
+        boolean insert(DataPoint point) {
+            long time = point.getTime();
+            double value = point.getValue();
+            int end = this.offset + this.size;
+            int i = end;
+            if (this.size > 0 && time <= this.times[end - 1]) {
+                // a delayed or reread value
+                i = search(time);
+                while (i < end && this.times[i] == time && Double.compare(this.values[i], value) < 0) {
+                    ++i;
+                }
+                if (i < end && this.times[i] == time && Double.compare(this.values[i], value) == 0) {
+                    return false;
+                }
+            }
+            if (end == this.times.length) {
+                int index = i - this.offset;
+                grow();
+                i = this.offset + index;
+                end = this.offset + this.size;
+            }
+            if (i < end) {
+                System.arraycopy(this.times, i, this.times, i + 1, end - i);
+                System.arraycopy(this.values, i, this.values, i + 1, end - i);
+                System.arraycopy(this.longitudes, i, this.longitudes, i + 1, end - i);
+                System.arraycopy(this.latitudes, i, this.latitudes, i + 1, end - i);
+            }
+            ++this.size;
+            this.times[i] = time;
+            this.values[i] = value;
+            this.longitudes[i] = point.getLongitude();
+            this.latitudes[i] = point.getLatitude();
+            return true;
+        }
+
+        /**
+         * Remove all values before the cutoff.
+         *
+         * @param cutoff the time in milliseconds since the epoch
+         *
+         * @return if the series is empty afterwards
+         */
+        boolean evict(long cutoff) {
+            int i = search(cutoff);
+            this.size -= i - this.offset;
+            this.offset = i;
+            if (this.size == 0) {
+                return true;
+            }
+            if (this.offset > this.size) {
+                compact(this.times.length);
+            }
+            return false;
+        }
+
+        /**
+         * Get the values in the specified time range.
+         *
+         * @param sensor the sensor id
+         * @param from   the begin of the time range (inclusive)
+         * @param to     the end of the time range (inclusive)
+         *
+         * @return the data points
+         */
+        List<DataPoint> get(int sensor, long from, long to) {
+            int lower = search(from);
+            int upper = to == Long.MAX_VALUE ? this.offset + this.size : search(to + 1);
+            List<DataPoint> list = new ArrayList<>(Math.max(0, upper - lower));
+            for (int i = lower; i < upper; ++i) {
+                list.add(new DataPoint(sensor, this.times[i], this.values[i],
+                                       this.longitudes[i], this.latitudes[i]));
+            }
+            return list;
+        }
+
+        /**
+         * Get the index of the first value at or after the specified time.
+         *
+         * @param time the time
+         *
+         * @return the index
+         */
+        private int search(long time) {
+            // values may share a time, so the index of any equal value is not sufficient
+            int low = this.offset;
+            int high = this.offset + this.size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (this.times[mid] < time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private void grow() {
+            // reclaim the evicted space before allocating more
+            compact(this.size < this.times.length / 2 ? this.times.length : this.times.length * 2);
+        }
+
+        private void compact(int capacity) {
+            this.times = Arrays.copyOfRange(this.times, this.offset, this.offset + capacity);
+            this.values = Arrays.copyOfRange(this.values, this.offset, this.offset + capacity);
+            this.longitudes = Arrays.copyOfRange(this.longitudes, this.offset, this.offset + capacity);
+            this.latitudes = Arrays.copyOfRange(this.latitudes, this.offset, this.offset + capacity);
+            this.offset = 0;
+        }
+    }
+
+}
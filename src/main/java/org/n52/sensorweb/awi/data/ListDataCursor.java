@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.data;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * {@code DataCursor} over data points that were already read into memory.
+ *
+ * @author Christian Autermann
+ */
+public class ListDataCursor implements DataCursor {
+    private Iterator<DataPoint> iterator;
+
+    /**
+     * Create a new {@code ListDataCursor}.
+     *
+     * @param data the data points
+     */
+    public ListDataCursor(List<DataPoint> data) {
+        this.iterator = data.iterator();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return this.iterator.hasNext();
+    }
+
+    @Override
+    public DataPoint next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return this.iterator.next();
+    }
+
+    @Override
+    public void close() {
+        // release the references to the data points
+        this.iterator = Collections.emptyIterator();
+    }
+
+}
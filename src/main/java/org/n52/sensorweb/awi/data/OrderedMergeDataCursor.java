@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.data;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.hibernate.HibernateException;
+
+/**
+ * {@code DataCursor} that merges several ordered cursors into a single ordered cursor (k-way merge). Every source
+ * cursor has to be ordered by the supplied comparator.
+ *
+ * @author Christian Autermann
+ */
+public class OrderedMergeDataCursor implements DataCursor {
+    private final List<DataCursor> cursors;
+    private final PriorityQueue<Head> heads;
+    private boolean initialized;
+
+    /**
+     * Create a new {@code OrderedMergeDataCursor}.
+     *
+     * @param cursors    the ordered cursors
+     * @param comparator the order of the cursors
+     */
+    public OrderedMergeDataCursor(List<? extends DataCursor> cursors, Comparator<DataPoint> comparator) {
+        this.cursors = new ArrayList<>(cursors);
+        Comparator<Head> order = (a, b) -> comparator.compare(a.point, b.point);
+        this.heads = new PriorityQueue<>(Math.max(1, cursors.size()), order);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!this.initialized) {
+            this.initialized = true;
+            try {
+                for (DataCursor cursor : this.cursors) {
+                    if (cursor.hasNext()) {
+                        this.heads.add(new Head(cursor, cursor.next()));
+                    }
+                }
+            } catch (HibernateException e) {
+                close();
+                throw e;
+            }
+        }
+        return !this.heads.isEmpty();
+    }
+
+    @Override
+    public DataPoint next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Head head = this.heads.poll();
+        DataPoint point = head.point;
+        try {
+            if (head.cursor.hasNext()) {
+                head.point = head.cursor.next();
+                this.heads.add(head);
+            }
+        } catch (HibernateException e) {
+            close();
+            throw e;
+        }
+        return point;
+    }
+
+    @Override
+    public void close() {
+        this.initialized = true;
+        this.heads.clear();
+        this.cursors.forEach(DataCursor::close);
+    }
+
+    @Override
+    public void cancel() {
+        this.cursors.forEach(DataCursor::cancel);
+    }
+
+    /**
+     * The current data point of a source cursor.
+     */
+    private static class Head {
+        private final DataCursor cursor;
+        private DataPoint point;
+
+        Head(DataCursor cursor, DataPoint point) {
+            this.cursor = cursor;
+            this.point = point;
+        }
+    }
+
+}
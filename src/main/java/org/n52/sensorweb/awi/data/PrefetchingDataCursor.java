@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.HibernateException;
+
+/**
+ * {@code DataCursor} that opens and reads another cursor in a background thread. The data points are handed over in
+ * batches using a bounded queue, so the producing thread blocks if the consumer falls behind.
+ *
+ * The source cursor is opened, read and closed exclusively by the background thread. Errors of the background thread
+ * are rethrown by {@link #hasNext()} as {@link HibernateException}.
+ *
+ * @author Christian Autermann
+ */
+public class PrefetchingDataCursor implements DataCursor {
+    private static final List<DataPoint> END = new ArrayList<>(0);
+    private static final long OFFER_TIMEOUT = 100;
+    private final BlockingQueue<List<DataPoint>> queue;
+    private final int batchSize;
+    private volatile boolean closed;
+    private volatile boolean cancelled;
+    private volatile DataCursor source;
+    private RuntimeException error;
+    private Iterator<DataPoint> batch = Collections.emptyIterator();
+    private boolean exhausted;
+
+    /**
+     * Create a new {@code PrefetchingDataCursor} and start reading the source in the background.
+     *
+     * @param source    the function opening the source cursor
+     * @param executor  the executor to run the background thread
+     * @param batchSize the number of data points per batch
+     * @param capacity  the maximum number of batches that are buffered
+     */
+    public PrefetchingDataCursor(Callable<DataCursor> source, Executor executor, int batchSize, int capacity) {
+        if (batchSize <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("batchSize and capacity have to be positive");
+        }
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        executor.execute(() -> produce(source));
+    }
+
+    /**
+     * Read the source cursor into the queue.
+     *
+     * @param source the function opening the source cursor
+     */
+    private void produce(Callable<DataCursor> source) {
+        try (DataCursor cursor = source.call()) {
+            this.source = cursor;
+            List<DataPoint> points = new ArrayList<>(this.batchSize);
+            while (!this.closed && !this.cancelled && cursor.hasNext()) {
+                points.add(cursor.next());
+                if (points.size() == this.batchSize) {
+                    offer(points);
+                    points = new ArrayList<>(this.batchSize);
+                }
+            }
+            if (!points.isEmpty()) {
+                offer(points);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.error = new HibernateException("Interrupted while reading data", e);
+        } catch (RuntimeException e) {
+            this.error = e;
+        } catch (Exception e) {
+            this.error = new HibernateException(e);
+        } finally {
+            try {
+                offer(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Put the batch into the queue unless this cursor is closed.
+     *
+     * @param points the batch
+     *
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    private void offer(List<DataPoint> points) throws InterruptedException {
+        while (!this.closed) {
+            if (this.queue.offer(points, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!this.batch.hasNext()) {
+            if (this.exhausted) {
+                return false;
+            }
+            List<DataPoint> points;
+            try {
+                points = this.queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new HibernateException("Interrupted while waiting for data", e);
+            }
+            if (points == END) {
+                this.exhausted = true;
+                if (this.error != null) {
+                    throw this.error;
+                }
+            } else {
+                this.batch = points.iterator();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public DataPoint next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return this.batch.next();
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        this.exhausted = true;
+        this.batch = Collections.emptyIterator();
+        // unblock the producer, it closes the source cursor
+        this.queue.clear();
+    }
+
+    @Override
+    public void cancel() {
+        this.cancelled = true;
+        DataCursor cursor = this.source;
+        if (cursor != null) {
+            cursor.cancel();
+        }
+    }
+
+}
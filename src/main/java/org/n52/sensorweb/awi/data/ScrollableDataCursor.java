@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.data;
+
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+import org.hibernate.HibernateException;
+import org.hibernate.ScrollableResults;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code DataCursor} that is backed by a server side cursor of a {@link StatelessSession}. The rows have to be
+ * projected tuples as expected by {@link DataPoint#fromTuple(Object[])}.
+ *
+ * As a stateless session has no first-level cache, the rows are not retained after they have been read and the memory
+ * consumption does not depend on the size of the result. The session and the surrounding transaction are closed as
+ * soon as the cursor is exhausted or closed.
+ *
+ * @author Christian Autermann
+ */
+public class ScrollableDataCursor implements DataCursor {
+    private static final Logger LOG = LoggerFactory.getLogger(ScrollableDataCursor.class);
+    private final ScrollableResults results;
+    private final StatelessSession session;
+    private final Transaction transaction;
+    private DataPoint next;
+    private volatile boolean closed;
+
+    /**
+     * Create a new {@code ScrollableDataCursor}.
+     *
+     * @param results     the results to iterate
+     * @param session     the session the results belong to
+     * @param transaction the transaction that keeps the cursor open
+     */
+    public ScrollableDataCursor(ScrollableResults results, StatelessSession session, Transaction transaction) {
+        this.results = Objects.requireNonNull(results);
+        this.session = Objects.requireNonNull(session);
+        this.transaction = Objects.requireNonNull(transaction);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (this.next == null && !this.closed) {
+            try {
+                if (this.results.next()) {
+                    this.next = DataPoint.fromTuple(this.results.get());
+                } else {
+                    close();
+                }
+            } catch (HibernateException e) {
+                close();
+                throw e;
+            }
+        }
+        return this.next != null;
+    }
+
+    @Override
+    public DataPoint next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        DataPoint current = this.next;
+        this.next = null;
+        return current;
+    }
+
+    @Override
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        try {
+            this.results.close();
+            // the cursor was only read, there is nothing to commit
+            if (this.transaction.isActive()) {
+                this.transaction.rollback();
+            }
+        } catch (HibernateException e) {
+            LOG.warn("Error closing data cursor", e);
+        } finally {
+            this.session.close();
+        }
+    }
+
+    @Override
+    public void cancel() {
+        if (this.closed) {
+            return;
+        }
+        try {
+            // aborts a running execute or fetch of the cursor
+            ((SharedSessionContractImplementor) this.session).getJdbcCoordinator().cancelLastQuery();
+        } catch (HibernateException e) {
+            LOG.warn("Error cancelling data cursor", e);
+        }
+    }
+
+}
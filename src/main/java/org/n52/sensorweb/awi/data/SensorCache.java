@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.data;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+
+import org.n52.sensorweb.awi.data.entities.Sensor;
+
+/**
+ * An in-memory dimension table of all published sensors including their devices and platforms.
+ *
+ * @author Christian Autermann
+ */
+public interface SensorCache {
+    /**
+     * Get the sensor with the specified id.
+     *
+     * @param id the sensor id
+     *
+     * @return the sensor or an empty {@code Optional} if no such sensor exists
+     */
+    @Nonnull
+    Optional<Sensor> getSensor(int id);
+
+    /**
+     * Get all sensors.
+     *
+     * @return the sensors
+     */
+    @Nonnull
+    Collection<Sensor> getSensors();
+
+    /**
+     * Get the sensors of the last update in the order of platform, device and sensor code, as sorted by the
+     * collation of the database. Sensors that were loaded on demand since the last update are not contained.
+     *
+     * @return the sensors
+     */
+    @Nonnull
+    List<Sensor> getOrderedSensors();
+}
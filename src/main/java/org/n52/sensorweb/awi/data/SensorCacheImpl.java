@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.data;
+
+import static java.util.stream.Collectors.toMap;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Timer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.inject.Singleton;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Restrictions;
+
+import org.n52.janmayen.lifecycle.Constructable;
+import org.n52.sensorweb.awi.data.entities.Device;
+import org.n52.sensorweb.awi.data.entities.Platform;
+import org.n52.sensorweb.awi.data.entities.Sensor;
+import org.n52.sensorweb.awi.sos.QueryContext;
+import org.n52.sensorweb.awi.util.DelegatingTimerTask;
+import org.n52.sos.ds.hibernate.util.AbstractSessionDao;
+
+/**
+ * {@code SensorCache} implementation that reads all published sensors from the database and keeps them in memory.
+ * Sensors that were added since the last update are loaded on demand.
+ *
+ * @author Christian Autermann
+ */
+@Singleton
+public class SensorCacheImpl extends AbstractSessionDao implements Constructable, SensorCache {
+    private final long updateInterval;
+    private final Timer timer = new Timer(true);
+    private volatile Map<Integer, Sensor> sensors = new ConcurrentHashMap<>();
+    private volatile List<Sensor> ordered = Collections.emptyList();
+
+    /**
+     * Creates a new {@code SensorCacheImpl}.
+     *
+     * @param sessionFactory the session factory
+     * @param updateInterval the interval in minutes to update the cache
+     */
+    public SensorCacheImpl(SessionFactory sessionFactory, long updateInterval) {
+        super(sessionFactory);
+        this.updateInterval = updateInterval;
+    }
+
+    @Override
+    public Optional<Sensor> getSensor(int id) {
+        Map<Integer, Sensor> map = this.sensors;
+        Sensor sensor = map.get(id);
+        if (sensor == null) {
+            sensor = load(id);
+            if (sensor != null) {
+                map.putIfAbsent(id, sensor);
+            }
+        }
+        return Optional.ofNullable(sensor);
+    }
+
+    @Override
+    public Collection<Sensor> getSensors() {
+        return Collections.unmodifiableCollection(this.sensors.values());
+    }
+
+    @Override
+    public List<Sensor> getOrderedSensors() {
+        return this.ordered;
+    }
+
+    @Override
+    public void init() {
+        if (this.updateInterval > 0) {
+            updateAndSchedule();
+        } else {
+            update();
+        }
+    }
+
+    /**
+     * Update the cache and schedule a new update.
+     */
+    private void updateAndSchedule() {
+        try {
+            update();
+        } finally {
+            long delay = TimeUnit.MINUTES.toMillis(this.updateInterval);
+            this.timer.schedule(new DelegatingTimerTask(this::updateAndSchedule), delay);
+        }
+    }
+
+    /**
+     * Update the cache.
+     */
+    private void update() {
+        QueryContext ctx = QueryContext.forSensor();
+        @SuppressWarnings("unchecked")
+        List<Sensor> list = query(s -> s.createCriteria(Sensor.class)
+                .setComment("Caching sensors")
+                .createAlias(ctx.getSensorPath(Sensor.DEVICE), ctx.getDevice())
+                .createAlias(ctx.getDevicePath(Device.PLATFORM), ctx.getPlatform())
+                .add(Restrictions.isNotNull(ctx.getDevicePath(Device.CODE)))
+                .add(Restrictions.isNotNull(ctx.getPlatformPath(Platform.CODE)))
+                .add(Restrictions.eq(ctx.getPlatformPath(Platform.PUBLISHED), true))
+                .addOrder(Order.asc(ctx.getPlatformPath(Platform.CODE)))
+                .addOrder(Order.asc(ctx.getDevicePath(Device.CODE)))
+                .addOrder(Order.asc(ctx.getSensorPath(Sensor.CODE)))
+                .setReadOnly(true)
+                .list());
+        this.sensors = list.stream().collect(toMap(Sensor::getId, Function.identity(),
+                                                   (a, b) -> a, ConcurrentHashMap::new));
+        // the order of the codes depends on the collation of the database
+        this.ordered = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Load a single sensor that is not yet known to the cache.
+     *
+     * @param id the sensor id
+     *
+     * @return the sensor or {@code null}
+     */
+    private Sensor load(int id) {
+        return query(s -> (Sensor) s.createCriteria(Sensor.class)
+                .setComment("Loading uncached sensor")
+                .add(Restrictions.idEq(id))
+                .setReadOnly(true)
+                .uniqueResult());
+    }
+
+}
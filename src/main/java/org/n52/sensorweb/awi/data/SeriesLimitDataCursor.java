@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.data;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * {@code DataCursor} that only passes the first or latest values of every sensor of a cursor. The source has to be
+ * ordered by sensor and time, so the values of every sensor are contiguous. For the latest values, at most
+ * {@code count} values are buffered.
+ *
+ * @author Christian Autermann
+ */
+public class SeriesLimitDataCursor implements DataCursor {
+    private final DataCursor cursor;
+    private final int count;
+    private final boolean latest;
+    private final Deque<DataPoint> buffer;
+    private DataPoint pending;
+    private int sensor;
+    private int emitted;
+
+    /**
+     * Create a new {@code SeriesLimitDataCursor}.
+     *
+     * @param cursor the ordered source cursor
+     * @param count  the number of values per sensor
+     * @param latest if the latest instead of the first values should be passed
+     */
+    public SeriesLimitDataCursor(DataCursor cursor, int count, boolean latest) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count has to be positive");
+        }
+        this.cursor = Objects.requireNonNull(cursor);
+        this.count = count;
+        this.latest = latest;
+        this.buffer = new ArrayDeque<>(latest ? Math.min(count, 1024) : 0);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return this.latest ? fillLatest() : fillFirst();
+    }
+
+    /**
+     * Skip to the next value that is one of the first values of its sensor.
+     *
+     * @return if there is such a value
+     */
+    private boolean fillFirst() {
+        while (this.pending == null && this.cursor.hasNext()) {
+            DataPoint point = this.cursor.next();
+            if (this.emitted == 0 || point.getSensor() != this.sensor) {
+                this.sensor = point.getSensor();
+                this.emitted = 0;
+            }
+            if (this.emitted < this.count) {
+                ++this.emitted;
+                this.pending = point;
+            }
+        }
+        return this.pending != null;
+    }
+
+    /**
+     * Buffer the latest values of the next sensor if the buffer is empty.
+     *
+     * @return if there is a buffered value
+     */
+    private boolean fillLatest() {
+        if (!this.buffer.isEmpty()) {
+            return true;
+        }
+        if (this.pending == null && this.cursor.hasNext()) {
+            this.pending = this.cursor.next();
+        }
+        if (this.pending == null) {
+            return false;
+        }
+        int current = this.pending.getSensor();
+        while (this.pending != null && this.pending.getSensor() == current) {
+            if (this.buffer.size() == this.count) {
+                this.buffer.removeFirst();
+            }
+            this.buffer.addLast(this.pending);
+            this.pending = this.cursor.hasNext() ? this.cursor.next() : null;
+        }
+        return true;
+    }
+
+    @Override
+    public DataPoint next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        if (this.latest) {
+            return this.buffer.removeFirst();
+        }
+        DataPoint current = this.pending;
+        this.pending = null;
+        return current;
+    }
+
+    @Override
+    public void close() {
+        this.buffer.clear();
+        this.pending = null;
+        this.cursor.close();
+    }
+
+    @Override
+    public void cancel() {
+        this.cursor.cancel();
+    }
+
+}
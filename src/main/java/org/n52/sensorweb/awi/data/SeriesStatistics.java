@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.data;
+
+import java.time.Instant;
+
+/**
+ * The number of values and the time extent of the data of a single sensor.
+ *
+ * @author Christian Autermann
+ */
+public final class SeriesStatistics {
+    private final int sensor;
+    private final long count;
+    private final long begin;
+    private final long end;
+
+    /**
+     * Create a new {@code SeriesStatistics}.
+     *
+     * @param sensor the sensor id
+     * @param count  the number of values
+     * @param begin  the time of the first value in milliseconds since the epoch
+     * @param end    the time of the last value in milliseconds since the epoch
+     */
+    public SeriesStatistics(int sensor, long count, long begin, long end) {
+        this.sensor = sensor;
+        this.count = count;
+        this.begin = begin;
+        this.end = end;
+    }
+
+    /**
+     * Get the id of the sensor.
+     *
+     * @return the sensor id
+     */
+    public int getSensor() {
+        return sensor;
+    }
+
+    /**
+     * Get the number of values.
+     *
+     * @return the number of values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get the time of the first value.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getBegin() {
+        return begin;
+    }
+
+    /**
+     * Get the time of the last value.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Estimate the number of values in the specified interval assuming the values are evenly distributed over the time
+     * extent of the series.
+     *
+     * @param from the begin of the interval in milliseconds since the epoch (inclusive)
+     * @param to   the end of the interval in milliseconds since the epoch (inclusive)
+     *
+     * @return the estimated number of values
+     */
+    public long estimate(long from, long to) {
+        long lower = Math.max(from, this.begin);
+        long upper = Math.min(to, this.end);
+        if (lower > upper) {
+            return 0;
+        }
+        if (this.end == this.begin) {
+            return this.count;
+        }
+        double fraction = (double) (upper - lower) / (this.end - this.begin);
+        return Math.max(1, (long) Math.ceil(fraction * this.count));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SeriesStatistics{sensor=%d, count=%d, begin=%s, end=%s}",
+                             sensor, count, Instant.ofEpochMilli(begin), Instant.ofEpochMilli(end));
+    }
+}
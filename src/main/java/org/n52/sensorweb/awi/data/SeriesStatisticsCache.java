@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.data;
+
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A cache of the {@link SeriesStatistics} of all sensors.
+ *
+ * @author Christian Autermann
+ */
+public interface SeriesStatisticsCache {
+    /**
+     * Get the statistics of the specified sensor.
+     *
+     * @param sensor the sensor id
+     *
+     * @return the statistics or an empty {@code Optional} if the sensor has no data or the cache is not yet loaded
+     */
+    @Nonnull
+    Optional<SeriesStatistics> getStatistics(int sensor);
+
+    /**
+     * Check if the cache is loaded. Until then, missing statistics do not imply that a sensor has no data.
+     *
+     * @return if the statistics of all sensors are known
+     */
+    boolean isLoaded();
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.data;
+
+import static java.util.stream.Collectors.toMap;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Timer;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.inject.Singleton;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Projections;
+
+import org.n52.janmayen.lifecycle.Constructable;
+import org.n52.sensorweb.awi.data.entities.Data;
+import org.n52.sensorweb.awi.data.entities.Sensor;
+import org.n52.sensorweb.awi.sos.QueryContext;
+import org.n52.sensorweb.awi.util.DelegatingTimerTask;
+import org.n52.sos.ds.hibernate.util.AbstractSessionDao;
+
+/**
+ * {@code SeriesStatisticsCache} implementation that periodically aggregates the {@code dataview} table per sensor.
+ *
+ * @author Christian Autermann
+ */
+@Singleton
+public class SeriesStatisticsCacheImpl extends AbstractSessionDao implements Constructable, SeriesStatisticsCache {
+    private final long updateInterval;
+    private final Timer timer = new Timer(true);
+    private volatile Map<Integer, SeriesStatistics> statistics;
+
+    /**
+     * Creates a new {@code SeriesStatisticsCacheImpl}.
+     *
+     * @param sessionFactory the session factory
+     * @param updateInterval the interval in minutes to update the cache
+     */
+    public SeriesStatisticsCacheImpl(SessionFactory sessionFactory, long updateInterval) {
+        super(sessionFactory);
+        this.updateInterval = updateInterval;
+    }
+
+    @Override
+    public Optional<SeriesStatistics> getStatistics(int sensor) {
+        Map<Integer, SeriesStatistics> current = this.statistics;
+        return current == null ? Optional.empty() : Optional.ofNullable(current.get(sensor));
+    }
+
+    @Override
+    public boolean isLoaded() {
+        return this.statistics != null;
+    }
+
+    @Override
+    public void init() {
+        // aggregating the whole table may take a while, do not block the startup
+        if (this.updateInterval > 0) {
+            this.timer.schedule(new DelegatingTimerTask(this::updateAndSchedule), 0);
+        } else {
+            this.timer.schedule(new DelegatingTimerTask(this::update), 0);
+        }
+    }
+
+    /**
+     * Update the cache and schedule a new update.
+     */
+    private void updateAndSchedule() {
+        try {
+            update();
+        } finally {
+            long delay = TimeUnit.MINUTES.toMillis(this.updateInterval);
+            this.timer.schedule(new DelegatingTimerTask(this::updateAndSchedule), delay);
+        }
+    }
+
+    /**
+     * Update the cache.
+     */
+    private void update() {
+        QueryContext ctx = QueryContext.forData();
+        @SuppressWarnings("unchecked")
+        List<Object[]> list = query(s -> s.createCriteria(Data.class)
+                .setComment("Caching series statistics")
+                .createAlias(Data.SENSOR, ctx.getSensor())
+                .setProjection(Projections.projectionList()
+                        .add(Projections.groupProperty(ctx.getSensorPath(Sensor.ID)))
+                        .add(Projections.rowCount())
+                        .add(Projections.min(ctx.getDataPath(Data.TIME)))
+                        .add(Projections.max(ctx.getDataPath(Data.TIME))))
+                .setReadOnly(true)
+                .list());
+        this.statistics = list.stream()
+                .map(tuple -> new SeriesStatistics(((Number) tuple[0]).intValue(),
+                                                   ((Number) tuple[1]).longValue(),
+                                                   ((Date) tuple[2]).getTime(),
+                                                   ((Date) tuple[3]).getTime()))
+                .collect(toMap(SeriesStatistics::getSensor, Function.identity()));
+    }
+
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+import org.hibernate.HibernateException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code DataCursor} that drains another cursor as fast as possible in a background thread, so the database
+ * connection of the source is released as soon as the query is read completely, independent of how fast the data
+ * points are consumed.
+ *
+ * The data points are buffered in memory up to the configured capacity. If the consumer falls further behind, all
+ * following data points are spilled to a temporary file that is deleted when the cursor is closed. Errors of the
+ * background thread are rethrown by {@link #hasNext()} as {@link HibernateException}.
+ *
+ * @author Christian Autermann
+ */
+public class SpoolingDataCursor implements DataCursor {
+    private static final Logger LOG = LoggerFactory.getLogger(SpoolingDataCursor.class);
+    private static final int FLUSH_INTERVAL = 1000;
+    private final int capacity;
+    private final Queue<DataPoint> memory;
+    private Path file;
+    private DataOutputStream output;
+    private DataInputStream input;
+    private boolean spilling;
+    private boolean done;
+    private volatile boolean closed;
+    private volatile boolean cancelled;
+    private volatile DataCursor source;
+    private RuntimeException error;
+    private long written;
+    private long read;
+    private DataPoint next;
+
+    /**
+     * Create a new {@code SpoolingDataCursor} and start draining the source in the background.
+     *
+     * @param source   the function opening the source cursor
+     * @param executor the executor to run the background thread
+     * @param capacity the number of data points that are buffered in memory
+     */
+    public SpoolingDataCursor(Callable<DataCursor> source, Executor executor, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity has to be positive");
+        }
+        this.capacity = capacity;
+        this.memory = new ArrayDeque<>(Math.min(capacity, FLUSH_INTERVAL));
+        executor.execute(() -> produce(source));
+    }
+
+    /**
+     * Drain the source cursor into the spool.
+     *
+     * @param source the function opening the source cursor
+     */
+    private void produce(Callable<DataCursor> source) {
+        int pending = 0;
+        try (DataCursor cursor = source.call()) {
+            this.source = cursor;
+            while (!this.closed && !this.cancelled && cursor.hasNext()) {
+                DataPoint point = cursor.next();
+                synchronized (this) {
+                    if (!this.spilling && this.memory.size() < this.capacity) {
+                        this.memory.add(point);
+                        notifyAll();
+                        continue;
+                    }
+                    this.spilling = true;
+                }
+                write(point);
+                if (++pending == FLUSH_INTERVAL) {
+                    flush(pending);
+                    pending = 0;
+                }
+            }
+            flush(pending);
+        } catch (RuntimeException e) {
+            fail(e);
+        } catch (Exception e) {
+            fail(new HibernateException(e));
+        } finally {
+            closeOutput();
+            synchronized (this) {
+                this.done = true;
+                notifyAll();
+            }
+            if (this.closed) {
+                deleteFile();
+            }
+        }
+    }
+
+    /**
+     * Append the data point to the spool file.
+     *
+     * @param point the data point
+     *
+     * @throws IOException if the data point can not be written
+     */
+    private void write(DataPoint point) throws IOException {
+        if (this.output == null) {
+            Path path = Files.createTempFile("observations", ".spool");
+            synchronized (this) {
+                this.file = path;
+            }
+            this.output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+            LOG.debug("Spilling data points to {}", path);
+        }
+        this.output.writeInt(point.getSensor());
+        this.output.writeLong(point.getTime());
+        this.output.writeDouble(point.getValue());
+        this.output.writeDouble(point.getLongitude());
+        this.output.writeDouble(point.getLatitude());
+    }
+
+    /**
+     * Flush the spool file and make the pending data points visible to the consumer.
+     *
+     * @param pending the number of data points written since the last flush
+     *
+     * @throws IOException if the file can not be flushed
+     */
+    private void flush(int pending) throws IOException {
+        if (pending > 0) {
+            this.output.flush();
+            synchronized (this) {
+                this.written += pending;
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized void fail(RuntimeException e) {
+        this.error = e;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (this.next != null) {
+            return true;
+        }
+        synchronized (this) {
+            while (true) {
+                if (this.closed) {
+                    return false;
+                }
+                if (!this.memory.isEmpty()) {
+                    this.next = this.memory.poll();
+                    return true;
+                }
+                if (this.read < this.written) {
+                    break;
+                }
+                if (this.done) {
+                    if (this.error != null) {
+                        throw this.error;
+                    }
+                    return false;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    close();
+                    throw new HibernateException("Interrupted while waiting for data", e);
+                }
+            }
+        }
+        this.next = readFile();
+        return true;
+    }
+
+    /**
+     * Read the next data point from the spool file.
+     *
+     * @return the data point
+     */
+    private DataPoint readFile() {
+        try {
+            if (this.input == null) {
+                Path path;
+                synchronized (this) {
+                    path = this.file;
+                }
+                this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+            }
+            DataPoint point = new DataPoint(this.input.readInt(),
+                                            this.input.readLong(),
+                                            this.input.readDouble(),
+                                            this.input.readDouble(),
+                                            this.input.readDouble());
+            ++this.read;
+            return point;
+        } catch (IOException e) {
+            close();
+            throw new HibernateException("Error reading spooled data", e);
+        }
+    }
+
+    @Override
+    public DataPoint next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        DataPoint current = this.next;
+        this.next = null;
+        return current;
+    }
+
+    @Override
+    public void close() {
+        boolean finished;
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.memory.clear();
+            this.next = null;
+            finished = this.done;
+            notifyAll();
+        }
+        if (this.input != null) {
+            try {
+                this.input.close();
+            } catch (IOException e) {
+                LOG.warn("Error closing spool file", e);
+            }
+        }
+        // otherwise the producer deletes the file when it stops
+        if (finished) {
+            deleteFile();
+        }
+    }
+
+    @Override
+    public void cancel() {
+        this.cancelled = true;
+        DataCursor cursor = this.source;
+        if (cursor != null) {
+            cursor.cancel();
+        }
+    }
+
+    private void closeOutput() {
+        if (this.output != null) {
+            try {
+                this.output.close();
+            } catch (IOException e) {
+                LOG.warn("Error closing spool file", e);
+            }
+        }
+    }
+
+    private void deleteFile() {
+        Path path;
+        synchronized (this) {
+            path = this.file;
+            this.file = null;
+        }
+        if (path != null) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                LOG.warn("Error deleting spool file {}", path, e);
+            }
+        }
+    }
+
+}
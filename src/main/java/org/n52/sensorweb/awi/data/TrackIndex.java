@@ -0,0 +1,53 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.data;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * Index of the positions of the platforms over time, used to translate spatial filters into time ranges.
+ *
+ * @author Christian Autermann
+ */
+public interface TrackIndex {
+
+    /**
+     * Get the time until which the index is complete. Values after this time may not be covered by the index.
+     *
+     * @return the time or {@code null} if the index is not yet loaded
+     */
+    DateTime getEnd();
+
+    /**
+     * Get the time ranges in which the platforms reported positions inside of the envelope. The ranges are
+     * conservative: every value with a position inside of the envelope and a time before {@link #getEnd()} is
+     * contained in one of the ranges of its platform.
+     *
+     * @param envelope the envelope
+     *
+     * @return the time ranges for every indexed platform, platforms that never entered the envelope are mapped to an
+     *         empty list
+     */
+    @Nonnull
+    Map<String, List<Interval>> getTimeRanges(@Nonnull Envelope envelope);
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.data;
+
+import static java.util.stream.Collectors.collectingAndThen;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Timer;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collector;
+
+import javax.inject.Singleton;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.type.StandardBasicTypes;
+import org.hibernate.type.Type;
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+import org.locationtech.jts.geom.Envelope;
+
+import org.n52.janmayen.lifecycle.Constructable;
+import org.n52.sensorweb.awi.data.entities.Data;
+import org.n52.sensorweb.awi.data.entities.Device;
+import org.n52.sensorweb.awi.data.entities.Platform;
+import org.n52.sensorweb.awi.data.entities.Sensor;
+import org.n52.sensorweb.awi.sos.QueryContext;
+import org.n52.sensorweb.awi.util.DelegatingTimerTask;
+import org.n52.sos.ds.hibernate.util.AbstractSessionDao;
+
+/**
+ * {@code TrackIndex} implementation that periodically divides the positions in the {@code dataview} table into
+ * segments of a fixed duration per platform and keeps the bounding box of every segment. The simplified expedition
+ * geometries are not used, as they do not necessarily contain every reported position.
+ *
+ * @author Christian Autermann
+ */
+@Singleton
+public class TrackIndexImpl extends AbstractSessionDao implements Constructable, TrackIndex {
+    private static final String SEGMENT = "segment";
+    private final long updateInterval;
+    private final long segmentLength;
+    private final long lag;
+    private final Timer timer = new Timer(true);
+    private volatile Map<String, Track> tracks = Collections.emptyMap();
+    private volatile DateTime end;
+
+    /**
+     * Creates a new {@code TrackIndexImpl}.
+     *
+     * @param sessionFactory the session factory
+     * @param updateInterval the interval in minutes to update the index
+     * @param segmentLength  the duration of a segment in minutes
+     * @param lag            the time in minutes values may be inserted after they were observed
+     */
+    public TrackIndexImpl(SessionFactory sessionFactory, long updateInterval, long segmentLength, long lag) {
+        super(sessionFactory);
+        if (segmentLength <= 0 || lag < 0) {
+            throw new IllegalArgumentException("invalid track index configuration");
+        }
+        this.updateInterval = updateInterval;
+        this.segmentLength = TimeUnit.MINUTES.toMillis(segmentLength);
+        this.lag = TimeUnit.MINUTES.toMillis(lag);
+    }
+
+    @Override
+    public DateTime getEnd() {
+        return this.end;
+    }
+
+    @Override
+    public Map<String, List<Interval>> getTimeRanges(Envelope envelope) {
+        Objects.requireNonNull(envelope);
+        return this.tracks.entrySet().stream()
+                .collect(toMap(Map.Entry::getKey, e -> e.getValue().getTimeRanges(envelope, this.segmentLength)));
+    }
+
+    @Override
+    public void init() {
+        // indexing the whole table may take a while, do not block the startup
+        if (this.updateInterval > 0) {
+            this.timer.schedule(new DelegatingTimerTask(this::updateAndSchedule), 0);
+        } else {
+            this.timer.schedule(new DelegatingTimerTask(this::update), 0);
+        }
+    }
+
+    /**
+     * Update the index and schedule a new update.
+     */
+    private void updateAndSchedule() {
+        try {
+            update();
+        } finally {
+            long delay = TimeUnit.MINUTES.toMillis(this.updateInterval);
+            this.timer.schedule(new DelegatingTimerTask(this::updateAndSchedule), delay);
+        }
+    }
+
+    /**
+     * Update the index.
+     */
+    private void update() {
+        // values inserted after the query started are only covered if they were observed before the lag
+        DateTime newEnd = new DateTime(System.currentTimeMillis() - this.lag);
+        QueryContext ctx = QueryContext.forData();
+        String segment = String.format(Locale.ROOT, "floor(extract(epoch from {alias}.date) * 1000 / %d)",
+                                       this.segmentLength);
+        @SuppressWarnings("unchecked")
+        List<Object[]> list = query(s -> s.createCriteria(Data.class)
+                .setComment("Indexing platform tracks")
+                .createAlias(Data.SENSOR, ctx.getSensor())
+                .createAlias(ctx.getSensorPath(Sensor.DEVICE), ctx.getDevice())
+                .createAlias(ctx.getDevicePath(Device.PLATFORM), ctx.getPlatform())
+                .add(Restrictions.isNotNull(ctx.getDataPath(Data.LONGITUDE)))
+                .add(Restrictions.isNotNull(ctx.getDataPath(Data.LATITUDE)))
+                .add(Restrictions.isNotNull(ctx.getPlatformPath(Platform.CODE)))
+                .setProjection(Projections.projectionList()
+                        .add(Projections.groupProperty(ctx.getPlatformPath(Platform.CODE)))
+                        .add(Projections.sqlGroupProjection(segment + " as " + SEGMENT, segment,
+                                                            new String[] { SEGMENT },
+                                                            new Type[] { StandardBasicTypes.DOUBLE }))
+                        .add(Projections.min(ctx.getDataPath(Data.TIME)))
+                        .add(Projections.max(ctx.getDataPath(Data.TIME)))
+                        .add(Projections.min(ctx.getDataPath(Data.LONGITUDE)))
+                        .add(Projections.max(ctx.getDataPath(Data.LONGITUDE)))
+                        .add(Projections.min(ctx.getDataPath(Data.LATITUDE)))
+                        .add(Projections.max(ctx.getDataPath(Data.LATITUDE))))
+                .setReadOnly(true)
+                .list());
+        this.tracks = list.stream()
+                .collect(groupingBy(tuple -> (String) tuple[0], toTrack()));
+        this.end = newEnd;
+    }
+
+    /**
+     * Create a collector that creates a {@link Track} from segment tuples.
+     *
+     * @return the collector
+     */
+    private static Collector<Object[], ?, Track> toTrack() {
+        return collectingAndThen(toList(), Track::new);
+    }
+
+    /**
+     * The segments of a single platform ordered by time.
+     */
+    private static class Track {
+        private final long[] begins;
+        private final long[] ends;
+        private final double[] minX;
+        private final double[] maxX;
+        private final double[] minY;
+        private final double[] maxY;
+
+        /**
+         * Create a new {@code Track}.
+         *
+         * @param tuples the segment tuples
+         */
+        Track(List<Object[]> tuples) {
+            List<Object[]> sorted = new ArrayList<>(tuples);
+            sorted.sort(Comparator.comparing(tuple -> (Date) tuple[2]));
+            int size = sorted.size();
+            this.begins = new long[size];
+            this.ends = new long[size];
+            this.minX = new double[size];
+            this.maxX = new double[size];
+            this.minY = new double[size];
+            this.maxY = new double[size];
+            for (int i = 0; i < size; ++i) {
+                Object[] tuple = sorted.get(i);
+                this.begins[i] = ((Date) tuple[2]).getTime();
+                this.ends[i] = ((Date) tuple[3]).getTime();
+                this.minX[i] = ((Number) tuple[4]).doubleValue();
+                this.maxX[i] = ((Number) tuple[5]).doubleValue();
+                this.minY[i] = ((Number) tuple[6]).doubleValue();
+                this.maxY[i] = ((Number) tuple[7]).doubleValue();
+            }
+        }
+
+        /**
+         * Get the time ranges of the segments intersecting the envelope. Ranges of consecutive segments are merged.
+         *
+         * @param envelope      the envelope
+         * @param segmentLength the duration of a segment
+         *
+         * @return the time ranges
+         */
+        List<Interval> getTimeRanges(Envelope envelope, long segmentLength) {
+            List<Interval> ranges = new ArrayList<>();
+            long begin = 0;
+            long end = Long.MIN_VALUE;
+            for (int i = 0; i < this.begins.length; ++i) {
+                if (this.maxX[i] < envelope.getMinX() || this.minX[i] > envelope.getMaxX() ||
+                    this.maxY[i] < envelope.getMinY() || this.minY[i] > envelope.getMaxY()) {
+                    continue;
+                }
+                if (end != Long.MIN_VALUE && this.begins[i] - end <= segmentLength) {
+                    end = this.ends[i];
+                } else {
+                    if (end != Long.MIN_VALUE) {
+                        ranges.add(new Interval(begin, end));
+                    }
+                    begin = this.begins[i];
+                    end = this.ends[i];
+                }
+            }
+            if (end != Long.MIN_VALUE) {
+                ranges.add(new Interval(begin, end));
+            }
+            return ranges;
+        }
+    }
+}
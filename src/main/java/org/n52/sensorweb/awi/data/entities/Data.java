@@ -19,12 +19,16 @@ public class Data implements Serializable {
     public static final String VALUE = "value";
     public static final String SENSOR = "sensor";
     public static final String GEOMETRY = "geometry";
+    public static final String LONGITUDE = "longitude";
+    public static final String LATITUDE = "latitude";
 
     private static final long serialVersionUID = 2023558780951333945L;
     private Date time;
     private double value;
     private Sensor sensor;
     private Geometry geometry;
+    private Double longitude;
+    private Double latitude;
 
     /**
      * Get the time of this data point.
@@ -118,6 +122,42 @@ public class Data implements Serializable {
         this.geometry = geometry;
     }
 
+    /**
+     * Get the longitude of this data point.
+     *
+     * @return the longitude (may be {@code null})
+     */
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Set the longitude of this data point.
+     *
+     * @param longitude the longitude
+     */
+    public void setLongitude(Double longitude) {
+        this.longitude = longitude;
+    }
+
+    /**
+     * Get the latitude of this data point.
+     *
+     * @return the latitude (may be {@code null})
+     */
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Set the latitude of this data point.
+     *
+     * @param latitude the latitude
+     */
+    public void setLatitude(Double latitude) {
+        this.latitude = latitude;
+    }
+
     /**
      * Check if this data points is observed by a mobile platform.
      *
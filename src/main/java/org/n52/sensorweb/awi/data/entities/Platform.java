@@ -31,6 +31,8 @@ public class Platform implements Serializable {
     public static final String NAME = "name";
     public static final String CODE = "code";
     public static final String GEOMETRY = "geometry";
+    public static final String LONGITUDE = "longitude";
+    public static final String LATITUDE = "latitude";
     public static final String EXPEDITIONS = "expeditions";
     public static final String PUBLISHED = "published";
 
@@ -39,6 +41,8 @@ public class Platform implements Serializable {
     private String name;
     private String code;
     private Geometry geometry;
+    private Double longitude;
+    private Double latitude;
     private Set<Expedition> expeditions = new HashSet<>(0);
     private boolean published;
 
@@ -132,6 +136,42 @@ public class Platform implements Serializable {
         this.geometry = geometry;
     }
 
+    /**
+     * Get the longitude of this platform.
+     *
+     * @return the longitude (may be {@code null})
+     */
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Set the longitude of this platform.
+     *
+     * @param longitude the longitude
+     */
+    public void setLongitude(Double longitude) {
+        this.longitude = longitude;
+    }
+
+    /**
+     * Get the latitude of this platform.
+     *
+     * @return the latitude (may be {@code null})
+     */
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * Set the latitude of this platform.
+     *
+     * @param latitude the latitude
+     */
+    public void setLatitude(Double latitude) {
+        this.latitude = latitude;
+    }
+
     /**
      * Get the expeditions of this platform.
      *
@@ -15,6 +15,8 @@
  */
 package org.n52.sensorweb.awi.sos;
 
+import java.util.Objects;
+
 import javax.inject.Inject;
 
 import org.n52.sensorweb.awi.sensor.SensorAPIClient;
@@ -39,6 +41,7 @@ import org.n52.sos.ds.AbstractDescribeSensorHandler;
 public class AWIDescribeSensorHandler extends AbstractDescribeSensorHandler {
 
     private final SensorAPIClient sensorApiClient;
+    private Bulkhead bulkhead = Bulkhead.unlimited();
 
     /**
      * Create a new {@code AWIDescribeSensorHandler}.
@@ -51,12 +54,24 @@ public class AWIDescribeSensorHandler extends AbstractDescribeSensorHandler {
         this.sensorApiClient = sensorApiClient;
     }
 
+    /**
+     * Set the bulkhead limiting the number of concurrently executed requests.
+     *
+     * @param bulkhead the bulkhead
+     */
+    public void setBulkhead(Bulkhead bulkhead) {
+        this.bulkhead = Objects.requireNonNull(bulkhead);
+    }
+
     @Override
     public DescribeSensorResponse getSensorDescription(DescribeSensorRequest request) throws OwsExceptionReport {
         checkFormat(request);
         checkValidTime(request);
 
-        SosProcedureDescriptionUnknownType description = retrieveDescription(request);
+        SosProcedureDescriptionUnknownType description;
+        try (Bulkhead.Permit permit = this.bulkhead.acquire(request)) {
+            description = retrieveDescription(request);
+        }
 
         DescribeSensorResponse response = new DescribeSensorResponse(request.getService(), request.getVersion());
         response.setOutputFormat(SensorML20Constants.SENSORML_20_OUTPUT_FORMAT_URL);
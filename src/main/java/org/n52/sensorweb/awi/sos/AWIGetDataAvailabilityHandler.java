@@ -5,6 +5,7 @@ import static java.util.stream.Collectors.toList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -61,6 +62,9 @@ public class AWIGetDataAvailabilityHandler extends AbstractGetDataAvailabilityHa
             = new FormatDescriptor(PROCEDURE_DESCRIPTION_FORMAT, Collections.singleton(OBSERVATION_FORMAT));
 
     private final SessionFactory sessionFactory;
+    private final ContentCachePruner contentCachePruner = new ContentCachePruner();
+    private int statementTimeout;
+    private Bulkhead bulkhead = Bulkhead.unlimited();
 
     /**
      * Create a new {@code AWIGetDataAvailabilityHandler}.
@@ -73,10 +77,34 @@ public class AWIGetDataAvailabilityHandler extends AbstractGetDataAvailabilityHa
         this.sessionFactory = sessionFactory;
     }
 
+    /**
+     * Set the number of seconds a statement may take until it is cancelled. A value of {@code 0} disables the timeout.
+     *
+     * @param statementTimeout the timeout in seconds
+     */
+    public void setStatementTimeout(int statementTimeout) {
+        if (statementTimeout < 0) {
+            throw new IllegalArgumentException("statementTimeout may not be negative");
+        }
+        this.statementTimeout = statementTimeout;
+    }
+
+    /**
+     * Set the bulkhead limiting the number of concurrently executed requests.
+     *
+     * @param bulkhead the bulkhead
+     */
+    public void setBulkhead(Bulkhead bulkhead) {
+        this.bulkhead = Objects.requireNonNull(bulkhead);
+    }
+
     @Override
     public GetDataAvailabilityResponse getDataAvailability(GetDataAvailabilityRequest request)
             throws OwsExceptionReport {
-        List<DataAvailability> dataAvailabilities = getDataAvailabilities(request);
+        List<DataAvailability> dataAvailabilities;
+        try (Bulkhead.Permit permit = this.bulkhead.acquire(request)) {
+            dataAvailabilities = getDataAvailabilities(request);
+        }
         GetDataAvailabilityResponse response = new GetDataAvailabilityResponse();
         response.setService(request.getService());
         response.setVersion(request.getVersion());
@@ -108,6 +136,10 @@ public class AWIGetDataAvailabilityHandler extends AbstractGetDataAvailabilityHa
 
         SosContentCache cache = getCache();
 
+        if (!this.contentCachePruner.canMatch(cache, filter)) {
+            return Collections.emptyList();
+        }
+
         Set<String> features = filter.getFeatures().isEmpty()
                                        ? cache.getFeaturesOfInterest()
                                        : filter.getFeatures();
@@ -205,6 +237,7 @@ public class AWIGetDataAvailabilityHandler extends AbstractGetDataAvailabilityHa
 
             return Stream.of(mobile, stationary)
                     .map(Functions.currySecond(Criteria::setReadOnly, true))
+                    .map(Functions.currySecond(Criteria::setTimeout, this.statementTimeout))
                     .map(Functions.currySecond(Criteria::setResultTransformer, transformer))
                     .map(Criteria::list)
                     .flatMap(List<DataAvailability>::stream)
@@ -20,6 +20,7 @@ import static java.util.stream.Collectors.toSet;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.BiConsumer;
@@ -86,6 +87,8 @@ import com.vividsolutions.jts.geom.Geometry;
 public class AWIGetFeatureOfInterestHandler extends AbstractGetFeatureOfInterestHandler {
     private static final Logger LOG = LoggerFactory.getLogger(AWIGetFeatureOfInterestHandler.class);
     private final SessionFactory sessionFactory;
+    private int statementTimeout;
+    private Bulkhead bulkhead = Bulkhead.unlimited();
 
     /**
      * Creates a new handler.
@@ -98,6 +101,27 @@ public class AWIGetFeatureOfInterestHandler extends AbstractGetFeatureOfInterest
         this.sessionFactory = sessionFactory;
     }
 
+    /**
+     * Set the number of seconds a statement may take until it is cancelled. A value of {@code 0} disables the timeout.
+     *
+     * @param statementTimeout the timeout in seconds
+     */
+    public void setStatementTimeout(int statementTimeout) {
+        if (statementTimeout < 0) {
+            throw new IllegalArgumentException("statementTimeout may not be negative");
+        }
+        this.statementTimeout = statementTimeout;
+    }
+
+    /**
+     * Set the bulkhead limiting the number of concurrently executed requests.
+     *
+     * @param bulkhead the bulkhead
+     */
+    public void setBulkhead(Bulkhead bulkhead) {
+        this.bulkhead = Objects.requireNonNull(bulkhead);
+    }
+
     @Override
     public GetFeatureOfInterestResponse getFeatureOfInterest(GetFeatureOfInterestRequest request)
             throws OwsExceptionReport {
@@ -109,7 +133,9 @@ public class AWIGetFeatureOfInterestHandler extends AbstractGetFeatureOfInterest
                 .setSpatialFilter(request.getSpatialFilters())
                 .build();
 
-        return new GetFeatureOfInterestResponse(request.getService(), request.getVersion(), getFeatures(filter));
+        try (Bulkhead.Permit permit = this.bulkhead.acquire(request)) {
+            return new GetFeatureOfInterestResponse(request.getService(), request.getVersion(), getFeatures(filter));
+        }
     }
 
     /**
@@ -159,6 +185,7 @@ public class AWIGetFeatureOfInterestHandler extends AbstractGetFeatureOfInterest
 
             return Stream.of(stationary, mobile)
                     .map(Functions.currySecond(Criteria::setReadOnly, true))
+                    .map(Functions.currySecond(Criteria::setTimeout, this.statementTimeout))
                     .map(Functions.currySecond(Criteria::setResultTransformer, transformer))
                     .map(Criteria::list)
                     .flatMap(List<AbstractFeature>::stream)
@@ -312,6 +339,7 @@ public class AWIGetFeatureOfInterestHandler extends AbstractGetFeatureOfInterest
 
         return Stream.of(stationary, mobile)
                 .map(Functions.currySecond(Criteria::setReadOnly, true))
+                .map(Functions.currySecond(Criteria::setTimeout, this.statementTimeout))
                 .map(Functions.currySecond(Criteria::setResultTransformer, transformer))
                 .map(Criteria::list)
                 .flatMap(List<String>::stream)
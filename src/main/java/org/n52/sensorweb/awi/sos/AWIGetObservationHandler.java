@@ -15,14 +15,32 @@
  */
 package org.n52.sensorweb.awi.sos;
 
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import javax.inject.Inject;
@@ -31,79 +49,342 @@ import org.hibernate.Criteria;
 import org.hibernate.HibernateException;
 import org.hibernate.ScrollMode;
 import org.hibernate.ScrollableResults;
-import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Disjunction;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projection;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.StandardBasicTypes;
+import org.hibernate.type.Type;
 import org.joda.time.DateTime;
+import org.joda.time.Interval;
+import org.locationtech.jts.geom.Envelope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import org.n52.janmayen.exception.CompositeException;
 import org.n52.janmayen.function.Functions;
 import org.n52.janmayen.function.Predicates;
-import org.n52.janmayen.function.ThrowingBiFunction;
+import org.n52.janmayen.function.ThrowingFunction;
+import org.n52.janmayen.lifecycle.Destroyable;
+import org.n52.sensorweb.awi.data.DataCursor;
+import org.n52.sensorweb.awi.data.DataCursorCoalescer;
+import org.n52.sensorweb.awi.data.DataPoint;
 import org.n52.sensorweb.awi.data.FeatureCache;
+import org.n52.sensorweb.awi.data.HotWindow;
+import org.n52.sensorweb.awi.data.ListDataCursor;
+import org.n52.sensorweb.awi.data.OrderedMergeDataCursor;
+import org.n52.sensorweb.awi.data.PrefetchingDataCursor;
+import org.n52.sensorweb.awi.data.ScrollableDataCursor;
+import org.n52.sensorweb.awi.data.SensorCache;
+import org.n52.sensorweb.awi.data.SeriesLimitDataCursor;
+import org.n52.sensorweb.awi.data.SeriesStatisticsCache;
+import org.n52.sensorweb.awi.data.SpoolingDataCursor;
+import org.n52.sensorweb.awi.data.TrackIndex;
 import org.n52.sensorweb.awi.data.entities.Data;
 import org.n52.sensorweb.awi.data.entities.Device;
 import org.n52.sensorweb.awi.data.entities.Expedition;
 import org.n52.sensorweb.awi.data.entities.Platform;
 import org.n52.sensorweb.awi.data.entities.Sensor;
+import org.n52.sensorweb.awi.util.web.ClientDisconnectFilter;
+import org.n52.shetland.ogc.filter.FilterConstants.SpatialOperator;
 import org.n52.shetland.ogc.filter.SpatialFilter;
 import org.n52.shetland.ogc.filter.TemporalFilter;
-import org.n52.shetland.ogc.gml.CodeType;
-import org.n52.shetland.ogc.gml.CodeWithAuthority;
-import org.n52.shetland.ogc.gml.ReferenceType;
-import org.n52.shetland.ogc.gml.time.TimeInstant;
-import org.n52.shetland.ogc.om.NamedValue;
+import org.n52.shetland.ogc.gml.time.IndeterminateValue;
 import org.n52.shetland.ogc.om.ObservationStream;
 import org.n52.shetland.ogc.om.OmConstants;
-import org.n52.shetland.ogc.om.OmObservableProperty;
-import org.n52.shetland.ogc.om.OmObservation;
-import org.n52.shetland.ogc.om.OmObservationConstellation;
-import org.n52.shetland.ogc.om.SingleObservationValue;
-import org.n52.shetland.ogc.om.features.samplingFeatures.SamplingFeature;
-import org.n52.shetland.ogc.om.values.GeometryValue;
-import org.n52.shetland.ogc.om.values.QuantityValue;
 import org.n52.shetland.ogc.ows.exception.InvalidParameterValueException;
+import org.n52.shetland.ogc.ows.exception.MissingParameterValueException;
 import org.n52.shetland.ogc.ows.exception.NoApplicableCodeException;
 import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
+import org.n52.shetland.ogc.ows.extension.Extension;
+import org.n52.shetland.ogc.sos.ExtendedIndeterminateTime;
 import org.n52.shetland.ogc.sos.Sos2Constants;
 import org.n52.shetland.ogc.sos.SosConstants;
-import org.n52.shetland.ogc.sos.SosProcedureDescriptionUnknownType;
 import org.n52.shetland.ogc.sos.exception.ResponseExceedsSizeLimitException;
 import org.n52.shetland.ogc.sos.request.GetObservationRequest;
 import org.n52.shetland.ogc.sos.response.GetObservationResponse;
-import org.n52.shetland.ogc.swe.SweConstants;
+import org.n52.shetland.ogc.swe.simpleType.SweText;
+import org.n52.shetland.util.ReferencedEnvelope;
 import org.n52.sos.ds.AbstractGetObservationHandler;
 import org.n52.sos.ds.hibernate.util.HibernateCollectors;
 import org.n52.sos.ds.hibernate.util.MoreRestrictions;
-import org.n52.sos.ds.hibernate.util.ScrollableObservationStream;
 import org.n52.sos.ds.hibernate.util.SpatialRestrictions;
 import org.n52.sos.ds.hibernate.util.TemporalRestrictions;
 import org.n52.sos.exception.ows.concrete.UnsupportedValueReferenceException;
-import org.n52.sos.util.JTSConverter;
 
 /**
  * {@code GetObservation} handler for the AWI Nearrealtime database.
  *
  * @author Christian Autermann
  */
-public class AWIGetObservationHandler extends AbstractGetObservationHandler {
+public class AWIGetObservationHandler extends AbstractGetObservationHandler implements Destroyable {
+    private static final int DEFAULT_FETCH_SIZE = 10000;
+    private static final int DEFAULT_MAX_VALUES_PER_OBSERVATION = 10000;
+    private static final long DEFAULT_ROW_BUDGET = 100000;
+    private static final long DEFAULT_PARALLEL_THRESHOLD = 100000;
+    private static final int PREFETCH_BATCH_SIZE = 1000;
+    private static final int PREFETCH_CAPACITY = 10;
+    private static final long DEFAULT_COALESCING_TIMEOUT = 10000;
+    private static final String CONTINUATION_TOKEN = "continuationToken";
+    private static final String AGGREGATION_FUNCTION = "aggregationFunction";
+    private static final String AGGREGATION_INTERVAL = "aggregationInterval";
+    private static final String VALUES_PER_SERIES = "valuesPerSeries";
+    private static final String BUCKET = "bucket";
+    private static final String BULK = "bulk";
+    private static final int EPSG_4326 = 4326;
+    private static final int MAX_TRACK_RANGES = 100;
+    /**
+     * The operators that only match points inside of the bounding box of the filter geometry.
+     */
+    private static final Set<SpatialOperator> BOUNDED_SPATIAL_OPERATORS = EnumSet.of(
+            SpatialOperator.BBOX, SpatialOperator.Equals, SpatialOperator.Touches, SpatialOperator.Within,
+            SpatialOperator.Overlaps, SpatialOperator.Crosses, SpatialOperator.Intersects, SpatialOperator.Contains);
+    /**
+     * Selects the first or latest values of every sensor using an index lookup per sensor. The sensors are passed as
+     * a {@code VALUES} list of sensor id and position in the result.
+     */
+    private static final String SERIES_LIMIT_QUERY = "SELECT d.sensor_id, d.date, d.mean, d.longitude, d.latitude"
+                                                     + " FROM (VALUES %s) AS s(id, ord)"
+                                                     + " CROSS JOIN LATERAL ("
+                                                     + "SELECT v.sensor_id, v.date, v.mean, v.longitude, v.latitude"
+                                                     + " FROM public.dataview v WHERE v.sensor_id = s.id"
+                                                     + " ORDER BY v.date %s LIMIT %d) AS d"
+                                                     + " ORDER BY s.ord, d.date";
+    private static final Logger LOG = LoggerFactory.getLogger(AWIGetObservationHandler.class);
     private final SessionFactory sessionFactory;
     private final FeatureCache featureCache;
+    private final SensorCache sensorCache;
+    private final CostEstimator costEstimator;
+    private final HotWindow hotWindow;
+    private final SensorMatcher sensorMatcher;
+    private final QueryCompiler queryCompiler;
+    private final TrackIndex trackIndex;
+    private final ContentCachePruner contentCachePruner = new ContentCachePruner();
+    private final ExecutorService executor = Executors.newCachedThreadPool(new QueryThreadFactory());
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    private int maxValuesPerObservation = DEFAULT_MAX_VALUES_PER_OBSERVATION;
+    private int pageSize;
+    private long rowBudget = DEFAULT_ROW_BUDGET;
+    private int parallelism = 1;
+    private long parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+    private int spoolCapacity;
+    private boolean bulkExtraction;
+    private int statementTimeout;
+    private Bulkhead bulkhead = Bulkhead.unlimited();
+    private ResponseCache responseCache;
+    private int coalescingCapacity;
+    private long coalescingTimeout = DEFAULT_COALESCING_TIMEOUT;
+    private DataCursorCoalescer coalescer;
 
     /**
      * Creates a new handler.
      *
-     * @param featureCache   the feature cache
-     * @param sessionFactory the session factory
+     * @param featureCache    the feature cache
+     * @param sensorCache     the sensor cache
+     * @param statisticsCache the series statistics cache
+     * @param hotWindow       the window of recent values
+     * @param trackIndex      the index of the platform tracks
+     * @param sessionFactory  the session factory
      */
     @Inject
-    public AWIGetObservationHandler(FeatureCache featureCache, SessionFactory sessionFactory) {
+    public AWIGetObservationHandler(FeatureCache featureCache, SensorCache sensorCache,
+                                    SeriesStatisticsCache statisticsCache, HotWindow hotWindow,
+                                    TrackIndex trackIndex, SessionFactory sessionFactory) {
         super(SosConstants.SOS);
         this.sessionFactory = sessionFactory;
         this.featureCache = featureCache;
+        this.sensorCache = sensorCache;
+        this.hotWindow = hotWindow;
+        this.trackIndex = trackIndex;
+        this.sensorMatcher = new SensorMatcher(featureCache);
+        this.queryCompiler = new QueryCompiler();
+        this.costEstimator = new CostEstimator(sensorCache, statisticsCache, featureCache);
+    }
+
+    /**
+     * Set the number of rows that are fetched from the database cursor at once.
+     *
+     * @param fetchSize the fetch size
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("fetchSize has to be positive");
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Set the maximum number of values that are merged into a single {@code SWEArrayObservation}.
+     *
+     * @param maxValuesPerObservation the maximum number of values
+     */
+    public void setMaxValuesPerObservation(int maxValuesPerObservation) {
+        if (maxValuesPerObservation <= 0) {
+            throw new IllegalArgumentException("maxValuesPerObservation has to be positive");
+        }
+        this.maxValuesPerObservation = maxValuesPerObservation;
+    }
+
+    /**
+     * Set the maximum number of values that are returned by a single response of a request that exceeds the row
+     * budget. If a response is truncated, a {@code continuationToken} extension is added to the response that can be
+     * used to request the next page. A value of {@code 0} disables paging, so requests exceeding the row budget are
+     * rejected.
+     *
+     * @param pageSize the page size
+     */
+    public void setPageSize(int pageSize) {
+        if (pageSize < 0) {
+            throw new IllegalArgumentException("pageSize may not be negative");
+        }
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Set the maximum estimated number of rows of a request that is answered in a single response.
+     *
+     * @param rowBudget the row budget
+     */
+    public void setRowBudget(long rowBudget) {
+        if (rowBudget <= 0) {
+            throw new IllegalArgumentException("rowBudget has to be positive");
+        }
+        this.rowBudget = rowBudget;
+    }
+
+    /**
+     * Set the maximum number of concurrent queries (and database connections) a single request is split into. A
+     * value of {@code 1} disables the parallel execution.
+     *
+     * @param parallelism the number of concurrent queries
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism has to be positive");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Set the minimum estimated number of rows of a request to be executed in parallel.
+     *
+     * @param parallelThreshold the minimum number of rows
+     */
+    public void setParallelThreshold(long parallelThreshold) {
+        if (parallelThreshold < 0) {
+            throw new IllegalArgumentException("parallelThreshold may not be negative");
+        }
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Set the number of values that are buffered in memory to decouple the database cursor from the client. Further
+     * values are spilled to a temporary file, so the connection is released as soon as the query is read. A value of
+     * {@code 0} disables the spooling and the connection is held until the response is written.
+     *
+     * @param spoolCapacity the number of values
+     */
+    public void setSpoolCapacity(int spoolCapacity) {
+        if (spoolCapacity < 0) {
+            throw new IllegalArgumentException("spoolCapacity may not be negative");
+        }
+        this.spoolCapacity = spoolCapacity;
+    }
+
+    /**
+     * Set if clients may request a bulk extraction using the {@code bulk} extension. Bulk extractions are not limited
+     * by the row budget and are streamed by the database using {@code COPY} into a CSV response.
+     *
+     * @param bulkExtraction if bulk extractions are enabled
+     */
+    public void setBulkExtraction(boolean bulkExtraction) {
+        this.bulkExtraction = bulkExtraction;
+    }
+
+    /**
+     * Set the number of seconds a statement reading observations may take until it is cancelled. A value of {@code 0}
+     * disables the timeout. The timeout does not apply to bulk extractions.
+     *
+     * @param statementTimeout the timeout in seconds
+     */
+    public void setStatementTimeout(int statementTimeout) {
+        if (statementTimeout < 0) {
+            throw new IllegalArgumentException("statementTimeout may not be negative");
+        }
+        this.statementTimeout = statementTimeout;
+    }
+
+    /**
+     * Set the bulkhead limiting the number of requests concurrently using the database. A request holds its permit
+     * until its values are read from the database: for spooled responses and pages this happens before the response
+     * is completely written, bulk extractions and streamed responses hold it until the response is written. Responses
+     * that are never written release it when the request is completed.
+     *
+     * @param bulkhead the bulkhead
+     */
+    public void setBulkhead(Bulkhead bulkhead) {
+        this.bulkhead = Objects.requireNonNull(bulkhead);
+    }
+
+    /**
+     * Set the cache for tabular responses of historical time ranges. A value of {@code null} disables the cache.
+     *
+     * @param responseCache the response cache
+     */
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * Set the number of values that are buffered for identical concurrent requests joining a running query. Requests
+     * may join until the query returned more values, so they share a single database query. A value of {@code 0}
+     * disables the coalescing.
+     *
+     * @param coalescingCapacity the number of values
+     */
+    public void setCoalescingCapacity(int coalescingCapacity) {
+        if (coalescingCapacity < 0) {
+            throw new IllegalArgumentException("coalescingCapacity may not be negative");
+        }
+        this.coalescingCapacity = coalescingCapacity;
+        this.coalescer = createCoalescer();
+    }
+
+    /**
+     * Set the number of milliseconds a request waits for identical requests that lag behind by the coalescing
+     * capacity. Afterwards the lagging requests fail, so they do not block the other requests.
+     *
+     * @param coalescingTimeout the timeout in milliseconds
+     */
+    public void setCoalescingTimeout(long coalescingTimeout) {
+        if (coalescingTimeout <= 0) {
+            throw new IllegalArgumentException("coalescingTimeout has to be positive");
+        }
+        this.coalescingTimeout = coalescingTimeout;
+        this.coalescer = createCoalescer();
+    }
+
+    /**
+     * Create the coalescer for the current configuration.
+     *
+     * @return the coalescer or {@code null} if coalescing is disabled
+     */
+    private DataCursorCoalescer createCoalescer() {
+        if (this.coalescingCapacity == 0) {
+            return null;
+        }
+        return new DataCursorCoalescer(this.coalescingCapacity, this.coalescingTimeout);
+    }
+
+    @Override
+    public void destroy() {
+        this.executor.shutdownNow();
     }
 
     @Override
@@ -116,8 +397,8 @@ public class AWIGetObservationHandler extends AbstractGetObservationHandler {
         String service = request.getService();
         String version = request.getVersion();
 
-        if (request.getResponseFormat() == null ||
-            !request.getResponseFormat().equals(OmConstants.NS_OM_2)) {
+        Optional<TabularFormat> tabular = TabularFormat.fromResponseFormat(request.getResponseFormat());
+        if (!tabular.isPresent() && !OmConstants.NS_OM_2.equals(request.getResponseFormat())) {
             throw new InvalidParameterValueException(SosConstants.GetObservationParams.responseFormat,
                                                      request.getResponseFormat());
         }
@@ -128,43 +409,698 @@ public class AWIGetObservationHandler extends AbstractGetObservationHandler {
                 .setProcedures(request.getProcedures())
                 .setProperties(request.getObservedProperties())
                 .setSpatialFilter(request.getSpatialFilter())
-                .setTemporalFilters(request.getTemporalFilters())
+                .setTemporalFilters(request.getNotFirstLatestTemporalFilter())
                 .build();
 
-        if (!filter.hasFilters()) {
-            throw new ResponseExceedsSizeLimitException();
+        Optional<ContinuationToken> token = getContinuationToken(request);
+        Optional<Aggregation> aggregation = getAggregation(request);
+        Optional<SeriesLimit> limit = getSeriesLimit(request);
+
+        if (limit.isPresent() && token.isPresent()) {
+            throw new InvalidParameterValueException(CONTINUATION_TOKEN, "")
+                    .withMessage("Continuation tokens are not supported for first/latest requests");
+        }
+
+        if (!this.contentCachePruner.canMatch(getCache(), filter)) {
+            LOG.debug("Answering request that can not match any value with an empty response");
+            if (tabular.isPresent()) {
+                return createTabularResponse(service, version, tabular.get(), filter,
+                                             new ListDataCursor(Collections.emptyList()),
+                                             aggregation, Optional.empty());
+            }
+            GetObservationResponse response = new GetObservationResponse();
+            response.setService(service);
+            response.setVersion(version);
+            response.setObservationCollection(ObservationStream.empty());
+            return response;
         }
-        ObservationStream observations;
 
-        Session session = sessionFactory.openSession();
+        Optional<String> cacheKey = Optional.empty();
+        if (this.responseCache != null && tabular.isPresent()) {
+            DataQuery query = DataQuery.builder(filter)
+                    .setToken(token)
+                    .setAggregation(aggregation)
+                    .setLimit(limit)
+                    .build();
+            boolean bulk = request.getExtensions().getBooleanExtension(BULK);
+            cacheKey = this.responseCache.getKey(tabular.get(), query, bulk);
+            Optional<TabularWriter> cached = cacheKey.flatMap(key -> this.responseCache.get(key, tabular.get()));
+            if (cached.isPresent()) {
+                LOG.debug("Answering request from the response cache");
+                return new TabularObservationResponse(service, version, cached.get());
+            }
+        }
+
+        // the permit is released as soon as the response no longer reads from the database and at the latest when the
+        // request is completed, even if the response was never written
+        Bulkhead.Permit permit = this.bulkhead.acquire(request);
+        ClientDisconnectFilter.onComplete(permit::close);
         try {
-            observations = getData(session, filter);
-        } catch (HibernateException e) {
-            // we are streaming, only close the session if an error occured
-            session.close();
-            throw new NoApplicableCodeException().causedBy(e);
+            GetObservationResponse response
+                    = queryObservations(request, filter, tabular, token, aggregation, limit, permit);
+            if (cacheKey.isPresent() && response instanceof TabularObservationResponse) {
+                TabularWriter writer = ((TabularObservationResponse) response).getWriter();
+                return new TabularObservationResponse(service, version,
+                                                      this.responseCache.put(cacheKey.get(), writer));
+            }
+            return response;
+        } catch (OwsExceptionReport | RuntimeException e) {
+            permit.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Query the observations of the request and create the response, that releases the permit as soon as it no
+     * longer reads from the database.
+     *
+     * @param request     the request
+     * @param filter      the filter of the request
+     * @param tabular     the requested tabular format
+     * @param token       the continuation token of the request
+     * @param aggregation the aggregation of the request
+     * @param limit       the first/latest limit of the request
+     * @param permit      the permit of the bulkhead
+     *
+     * @return the response
+     *
+     * @throws OwsExceptionReport in case an error occurs
+     */
+    private GetObservationResponse queryObservations(GetObservationRequest request, ObservationFilter filter,
+                                                     Optional<TabularFormat> tabular,
+                                                     Optional<ContinuationToken> token,
+                                                     Optional<Aggregation> aggregation, Optional<SeriesLimit> limit,
+                                                     Bulkhead.Permit permit)
+            throws OwsExceptionReport {
+        String service = request.getService();
+        String version = request.getVersion();
+
+        if (request.getExtensions().getBooleanExtension(BULK)) {
+            return getBulkResponse(service, version, tabular, DataQuery.builder(filter)
+                                   .setToken(token)
+                                   .setAggregation(aggregation)
+                                   .setLimit(limit)
+                                   .build(), permit);
+        }
+
+        // decide before a connection is taken if the request can be answered at all
+        OptionalLong estimate = this.costEstimator.estimate(filter, aggregation,
+                                                            limit.map(SeriesLimit::getCount).orElse(Integer.MAX_VALUE));
+        // the values per series can not be paged
+        boolean pageable = this.pageSize > 0 && !limit.isPresent();
+        // until the statistics are loaded the size is unknown and every request that can be paged is paged
+        boolean paged = token.isPresent() || (estimate.isPresent() ? estimate.getAsLong() > this.rowBudget : pageable);
+        if (paged && !pageable) {
+            if (!estimate.isPresent()) {
+                throw new ResponseExceedsSizeLimitException().withMessage("The request can not be paged");
+            }
+            LOG.debug("Rejecting request with {} estimated rows", estimate.getAsLong());
+            throw new ResponseExceedsSizeLimitException()
+                    .withMessage("The request would return an estimated number of %d values, the limit is %d",
+                                 estimate.getAsLong(), this.rowBudget);
+        }
+
+        DataQuery query = DataQuery.builder(filter)
+                .setToken(token)
+                .setAggregation(aggregation)
+                .setLimit(limit)
+                .setPaged(paged)
+                .build();
+
+        DataCursor cursor;
+        Optional<TemporalFilterMatcher> recent = getHotWindowMatcher(query);
+        if (recent.isPresent()) {
+            cursor = getHotWindowData(query, recent.get());
+            if (limit.isPresent()) {
+                cursor = new SeriesLimitDataCursor(cursor, limit.get().getCount(), limit.get().isLatest());
+            }
+        } else if (this.coalescer != null) {
+            // identical concurrent requests share a single database query
+            cursor = this.coalescer.open(query.toCanonicalString(), () -> getDatabaseData(query, estimate));
+        } else {
+            cursor = getDatabaseData(query, estimate);
+        }
+
+        cursor = cursor.onClose(permit::close);
+
+        Optional<String> nextToken = Optional.empty();
+        if (paged) {
+            List<DataPoint> page = readPage(cursor);
+            if (page.size() > this.pageSize) {
+                page.remove(this.pageSize);
+                DataPoint last = page.get(page.size() - 1);
+                Sensor sensor = this.sensorCache.getSensor(last.getSensor())
+                        .orElseThrow(() -> new NoApplicableCodeException()
+                                .withMessage("Unknown sensor %d", last.getSensor()));
+                ContinuationToken next = ContinuationToken.of(sensor, last);
+                if (aggregation.isPresent()) {
+                    // continue after the time bucket of the last value
+                    next = next.withTime(last.getTime() + aggregation.get().getInterval() - 1);
+                }
+                nextToken = Optional.of(next.encode());
+            }
+            cursor = new ListDataCursor(page);
+        } else if (this.spoolCapacity > 0) {
+            DataCursor source = cursor;
+            cursor = new SpoolingDataCursor(() -> source, this.executor, this.spoolCapacity);
+        }
+
+        // stop reading from the database as soon as the response can not be delivered anymore; this is noticed by
+        // the next write, pages are already read and a blocked cursor is only limited by the statement timeout
+        DataCursor running = cursor;
+        ClientDisconnectFilter.onDisconnect(() -> {
+            running.cancel();
+            running.close();
+        });
+        // an observation stream that is discarded or fails before it is read does not close the cursor
+        ClientDisconnectFilter.onComplete(running::close);
+
+        if (tabular.isPresent()) {
+            // rows are written directly from the cursor without creating observations
+            return createTabularResponse(service, version, tabular.get(), filter, cursor, aggregation, nextToken);
         }
 
         GetObservationResponse response = new GetObservationResponse();
         response.setService(service);
         response.setVersion(version);
-        response.setObservationCollection(observations);
+        nextToken.ifPresent(next -> response.addSweTextExtension(CONTINUATION_TOKEN, next));
+
+        ObservationCreator creator = new ObservationCreator(this.sensorCache, this.featureCache, aggregation);
+        if (isMergeObservationValues(request)) {
+            response.setObservationCollection(
+                    new MergingObservationStream(cursor, creator, this.maxValuesPerObservation));
+        } else {
+            response.setObservationCollection(new DataCursorObservationStream(cursor, creator));
+        }
         return response;
     }
 
+    /**
+     * Open a cursor for the data of the query that is read from the database.
+     *
+     * @param query    the query
+     * @param estimate the estimated number of values, if known
+     *
+     * @return the data cursor
+     *
+     * @throws OwsExceptionReport in case an error occurs
+     */
+    private DataCursor getDatabaseData(DataQuery query, OptionalLong estimate) throws OwsExceptionReport {
+        if (isSeriesLimitQuery(query)) {
+            return getSeriesLimitData(query);
+        }
+        DataCursor cursor;
+        if (this.parallelism > 1 && estimate.isPresent() && estimate.getAsLong() >= this.parallelThreshold) {
+            cursor = getParallelData(query);
+        } else {
+            cursor = getData(query);
+        }
+        Optional<SeriesLimit> limit = query.getLimit();
+        if (limit.isPresent()) {
+            cursor = new SeriesLimitDataCursor(cursor, limit.get().getCount(), limit.get().isLatest());
+        }
+        return cursor;
+    }
+
+    /**
+     * Create a response for a bulk extraction, that is written by a {@code COPY} statement of the database.
+     *
+     * @param service the service
+     * @param version the version
+     * @param format  the requested tabular format
+     * @param query   the query
+     * @param permit  the permit of the bulkhead, released when the response is closed
+     *
+     * @return the response
+     *
+     * @throws OwsExceptionReport if bulk extractions are disabled or not supported for the query
+     */
+    private GetObservationResponse getBulkResponse(String service, String version, Optional<TabularFormat> format,
+                                                   DataQuery query, Bulkhead.Permit permit)
+            throws OwsExceptionReport {
+        if (!this.bulkExtraction) {
+            throw new InvalidParameterValueException(BULK, Boolean.TRUE.toString())
+                    .withMessage("Bulk extractions are disabled");
+        }
+        if (!format.filter(f -> f == TabularFormat.CSV).isPresent()) {
+            throw new InvalidParameterValueException(BULK, Boolean.TRUE.toString())
+                    .withMessage("Bulk extractions are only supported for the response format %s",
+                                 TabularFormat.CSV.getResponseFormat());
+        }
+        if (query.getLimit().isPresent() || !this.queryCompiler.canCompileCopy(query)) {
+            throw new InvalidParameterValueException(BULK, Boolean.TRUE.toString())
+                    .withMessage("Bulk extractions do not support aggregations, continuation tokens, first/latest, "
+                                 + "spatial or feature filters and only support a single temporal filter");
+        }
+        LOG.debug("Answering request as bulk extraction");
+        String statement = this.queryCompiler.compileCopy(query, getSensorIds(query));
+        TabularWriter writer = new CopyTabularWriter(this.sessionFactory, statement);
+        return new TabularObservationResponse(service, version, writer.onClose(permit::close));
+    }
+
+    /**
+     * Create a response that writes the data points of the cursor as rows of a tabular format.
+     *
+     * @param service     the service
+     * @param version     the version
+     * @param format      the tabular format
+     * @param filter      the filter of the request
+     * @param cursor      the cursor
+     * @param aggregation the aggregation of the data points
+     * @param nextToken   the continuation token referencing the next page
+     *
+     * @return the response
+     */
+    private GetObservationResponse createTabularResponse(String service, String version, TabularFormat format,
+                                                         ObservationFilter filter, DataCursor cursor,
+                                                         Optional<Aggregation> aggregation,
+                                                         Optional<String> nextToken) {
+        TabularWriter writer;
+        if (format == TabularFormat.ARROW) {
+            // the dictionaries of an Arrow stream have to be known before the first row is written
+            List<Sensor> sensors = this.sensorCache.getSensors().stream()
+                    .filter(sensor -> sensor.getCode() != null)
+                    .filter(this.sensorMatcher.getPredicate(filter))
+                    .collect(toList());
+            writer = new ArrowObservationWriter(cursor, this.sensorCache, this.featureCache, aggregation, nextToken,
+                                                sensors);
+        } else if (format == TabularFormat.PARQUET) {
+            writer = new ParquetObservationWriter(cursor, this.sensorCache, this.featureCache, aggregation,
+                                                  nextToken);
+        } else {
+            writer = new TabularObservationWriter(cursor, this.sensorCache, this.featureCache, aggregation, format,
+                                                  nextToken);
+        }
+        return new TabularObservationResponse(service, version, writer);
+    }
+
+    /**
+     * Read a page of data points from the cursor. The page contains one data point more than the page size if there
+     * are further pages. The cursor is closed afterwards.
+     *
+     * @param cursor the cursor
+     *
+     * @return the data points
+     *
+     * @throws OwsExceptionReport if the data points can not be read
+     */
+    private List<DataPoint> readPage(DataCursor cursor) throws OwsExceptionReport {
+        try (DataCursor c = cursor) {
+            List<DataPoint> page = new ArrayList<>(Math.min(this.pageSize + 1, this.fetchSize));
+            while (page.size() <= this.pageSize && c.hasNext()) {
+                page.add(c.next());
+            }
+            return page;
+        } catch (HibernateException e) {
+            throw new NoApplicableCodeException().causedBy(e);
+        }
+    }
+
+    /**
+     * Get the continuation token of the request.
+     *
+     * @param request the request
+     *
+     * @return the continuation token
+     *
+     * @throws OwsExceptionReport if the token is invalid
+     */
+    private static Optional<ContinuationToken> getContinuationToken(GetObservationRequest request)
+            throws OwsExceptionReport {
+        Optional<String> value = getTextExtension(request, CONTINUATION_TOKEN);
+        if (!value.isPresent()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(ContinuationToken.decode(value.get()));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidParameterValueException(CONTINUATION_TOKEN, value.get()).causedBy(e);
+        }
+    }
+
+    /**
+     * Get the temporal aggregation of the request.
+     *
+     * @param request the request
+     *
+     * @return the aggregation
+     *
+     * @throws OwsExceptionReport if the aggregation is invalid
+     */
+    private static Optional<Aggregation> getAggregation(GetObservationRequest request) throws OwsExceptionReport {
+        Optional<String> function = getTextExtension(request, AGGREGATION_FUNCTION);
+        Optional<String> interval = getTextExtension(request, AGGREGATION_INTERVAL);
+        if (!function.isPresent() && !interval.isPresent()) {
+            return Optional.empty();
+        }
+        if (!function.isPresent()) {
+            throw new MissingParameterValueException(AGGREGATION_FUNCTION);
+        }
+        if (!interval.isPresent()) {
+            throw new MissingParameterValueException(AGGREGATION_INTERVAL);
+        }
+        try {
+            Aggregation.Function.valueOf(function.get().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidParameterValueException(AGGREGATION_FUNCTION, function.get()).causedBy(e);
+        }
+        try {
+            return Optional.of(Aggregation.parse(function.get(), interval.get()));
+        } catch (IllegalArgumentException | UnsupportedOperationException e) {
+            throw new InvalidParameterValueException(AGGREGATION_INTERVAL, interval.get()).causedBy(e);
+        }
+    }
+
+    /**
+     * Get the limit of values per series of the request. The limit is defined by the {@code first} and
+     * {@code latest} temporal filters and the number of values by the {@code valuesPerSeries} extension. If only the
+     * number is given, the latest values are selected.
+     *
+     * @param request the request
+     *
+     * @return the limit
+     *
+     * @throws OwsExceptionReport if the limit is invalid
+     */
+    private static Optional<SeriesLimit> getSeriesLimit(GetObservationRequest request) throws OwsExceptionReport {
+        List<IndeterminateValue> values = request.hasFirstLatestTemporalFilter()
+                                                  ? request.getFirstLatestTemporalFilter()
+                                                  : Collections.emptyList();
+        boolean first = values.stream().anyMatch(v -> v.equals(ExtendedIndeterminateTime.FIRST));
+        boolean latest = values.stream().anyMatch(v -> v.equals(ExtendedIndeterminateTime.LATEST));
+        if (first && latest) {
+            throw new InvalidParameterValueException()
+                    .at(Sos2Constants.GetObservationParams.temporalFilter)
+                    .withMessage("Only one of first and latest may be requested");
+        }
+        Optional<String> count = getTextExtension(request, VALUES_PER_SERIES);
+        if (!first && !latest && !count.isPresent()) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(new SeriesLimit(!first, count.map(Integer::parseInt).orElse(1)));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidParameterValueException(VALUES_PER_SERIES, count.orElse("")).causedBy(e);
+        }
+    }
+
+    /**
+     * Get the value of a textual request extension.
+     *
+     * @param request the request
+     * @param name    the name of the extension
+     *
+     * @return the value
+     *
+     * @throws OwsExceptionReport if the extension is not textual
+     */
+    private static Optional<String> getTextExtension(GetObservationRequest request, String name)
+            throws OwsExceptionReport {
+        Optional<Extension<?>> extension = request.getExtensions().getExtension(name);
+        if (!extension.isPresent()) {
+            return Optional.empty();
+        }
+        Object value = extension.get().getValue();
+        if (value instanceof SweText) {
+            value = ((SweText) value).getValue();
+        }
+        if (value instanceof String) {
+            return Optional.of((String) value);
+        }
+        throw new InvalidParameterValueException(name, String.valueOf(value));
+    }
+
+    /**
+     * Checks if the query only selects values that are contained in the hot window and only uses filters that can be
+     * evaluated in memory. Queries ending after the last update of the window, typically at the current time, are
+     * answered with the values known at the last update, so their responses lag the database by at most the update
+     * interval of the window.
+     *
+     * @param query the query
+     *
+     * @return the matcher for the temporal filters or an empty {@code Optional} if the query has to be answered by
+     *         the database
+     */
+    private Optional<TemporalFilterMatcher> getHotWindowMatcher(DataQuery query) {
+        ObservationFilter filter = query.getFilter();
+        if (query.getAggregation().isPresent() ||
+            query.getToken().isPresent() ||
+            query.isPaged() ||
+            !filter.getSpatialFilters().isEmpty() ||
+            !filter.getFeatures().isEmpty()) {
+            return Optional.empty();
+        }
+        long begin = this.hotWindow.getBegin();
+        long end = this.hotWindow.getEnd();
+        if (end < begin) {
+            // the window is not loaded
+            return Optional.empty();
+        }
+        return TemporalFilterMatcher.of(filter.getTemporalFilters())
+                .filter(matcher -> matcher.getBegin() >= begin);
+    }
+
+    /**
+     * Get the data for the specified query from the hot window without accessing the database. The sensors are
+     * ordered like the results of {@link #getData(DataQuery)}, as the sensor cache is sorted by the database.
+     *
+     * @param query   the query
+     * @param matcher the matcher for the temporal filters
+     *
+     * @return the data cursor
+     */
+    private DataCursor getHotWindowData(DataQuery query, TemporalFilterMatcher matcher) {
+        Set<Integer> recent = this.hotWindow.getSensors();
+        List<DataPoint> data = getSensorIds(query.getFilter()).stream()
+                .filter(recent::contains)
+                .flatMap(id -> this.hotWindow.getData(id, matcher.getBegin(), matcher.getEnd()).stream())
+                .filter(p -> matcher.test(p.getTime()))
+                .collect(toList());
+        LOG.debug("Answering request with {} values from the hot window", data.size());
+        return new ListDataCursor(data);
+    }
+
+    /**
+     * Checks if the query only selects the first or latest values of sensors that can be directly identified, so
+     * it can be answered by {@link #getSeriesLimitData(DataQuery)}.
+     *
+     * @param query the query
+     *
+     * @return if the query can be answered using index lookups per sensor
+     */
+    private static boolean isSeriesLimitQuery(DataQuery query) {
+        ObservationFilter filter = query.getFilter();
+        return query.getLimit().isPresent() &&
+               !query.getAggregation().isPresent() &&
+               !query.getToken().isPresent() &&
+               filter.getTemporalFilters().isEmpty() &&
+               filter.getSpatialFilters().isEmpty() &&
+               filter.getFeatures().isEmpty();
+    }
+
+    /**
+     * Get the first or latest values of the matching sensors. Instead of reading and sorting the whole time range, a
+     * lateral join fetches the values of every sensor from the tip of the index.
+     *
+     * @param query the query
+     *
+     * @return the data cursor
+     *
+     * @throws OwsExceptionReport in case an error occurs
+     */
+    private DataCursor getSeriesLimitData(DataQuery query) throws OwsExceptionReport {
+        SeriesLimit limit = query.getLimit().get();
+        List<Integer> sensors = getSensorIds(query.getFilter());
+        if (sensors.isEmpty()) {
+            return new ListDataCursor(Collections.emptyList());
+        }
+        // the ids are integers from the database and can be safely inlined
+        String values = IntStream.range(0, sensors.size())
+                .mapToObj(i -> String.format(Locale.ROOT, "(%d,%d)", sensors.get(i), i))
+                .collect(joining(","));
+        String sql = String.format(Locale.ROOT, SERIES_LIMIT_QUERY, values,
+                                   limit.isLatest() ? "DESC" : "ASC", limit.getCount());
+
+        StatelessSession session = this.sessionFactory.openStatelessSession();
+        try {
+            Transaction transaction = session.beginTransaction();
+            ScrollableResults results = session.createNativeQuery(sql)
+                    .addScalar("sensor_id", StandardBasicTypes.INTEGER)
+                    .addScalar("date", StandardBasicTypes.TIMESTAMP)
+                    .addScalar("mean", StandardBasicTypes.DOUBLE)
+                    .addScalar("longitude", StandardBasicTypes.DOUBLE)
+                    .addScalar("latitude", StandardBasicTypes.DOUBLE)
+                    .setComment("Getting " + limit + " observations")
+                    .setReadOnly(true)
+                    .setTimeout(this.statementTimeout)
+                    .setFetchSize(this.fetchSize)
+                    .scroll(ScrollMode.FORWARD_ONLY);
+            return new ScrollableDataCursor(results, session, transaction);
+        } catch (HibernateException e) {
+            session.close();
+            throw new NoApplicableCodeException().causedBy(e);
+        }
+    }
+
+    /**
+     * Get the data for the specified filters using multiple concurrent queries. The matching sensors are distributed
+     * over several queries that are read by background threads on separate connections. The results are merged back
+     * in the order of a single query, using the order of the sensor cache that respects the collation of the
+     * database.
+     *
+     * @param query the query
+     *
+     * @return the data cursor
+     *
+     * @throws OwsExceptionReport in case an error occurs
+     */
+    private DataCursor getParallelData(DataQuery query) throws OwsExceptionReport {
+        List<Integer> sensors = getSensorIds(query.getFilter());
+        int partitions = Math.min(this.parallelism, sensors.size());
+        if (partitions < 2) {
+            return getData(query);
+        }
+        LOG.debug("Splitting request for {} sensors into {} queries", sensors.size(), partitions);
+
+        Map<Integer, Integer> ranks = new HashMap<>(sensors.size());
+        List<Set<Integer>> partitioned = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; ++i) {
+            partitioned.add(new LinkedHashSet<>());
+        }
+        for (int i = 0; i < sensors.size(); ++i) {
+            ranks.put(sensors.get(i), i);
+            partitioned.get(i % partitions).add(sensors.get(i));
+        }
+
+        List<DataCursor> cursors = partitioned.stream()
+                .map(ids -> new PrefetchingDataCursor(() -> getData(query.withSensors(ids)), this.executor,
+                                                      PREFETCH_BATCH_SIZE, PREFETCH_CAPACITY))
+                .collect(toList());
+        Comparator<DataPoint> order = Comparator
+                .comparingInt((DataPoint p) -> ranks.getOrDefault(p.getSensor(), Integer.MAX_VALUE))
+                .thenComparingLong(DataPoint::getTime);
+        return new OrderedMergeDataCursor(cursors, order);
+    }
+
+    /**
+     * Get the ids of the sensors selected by the query in the order of platform, device and sensor code, if the query
+     * is not restricted to sensors.
+     *
+     * @param query the query
+     *
+     * @return the sensor ids
+     */
+    private List<Integer> getSensorIds(DataQuery query) {
+        if (!query.getSensors().isEmpty()) {
+            return new ArrayList<>(query.getSensors());
+        }
+        return getSensorIds(query.getFilter());
+    }
+
+    /**
+     * Get the ids of the sensors matching the filter in the order of platform, device and sensor code. The sensors
+     * are resolved from the sensor cache, that is ordered by the collation of the database, so no additional
+     * statement is sent. Sensors that were added since the last update of the sensor cache are selected after the
+     * next update.
+     *
+     * @param filter the filters
+     *
+     * @return the sensor ids
+     */
+    private List<Integer> getSensorIds(ObservationFilter filter) {
+        Predicate<Sensor> predicate = this.sensorMatcher.getPredicate(filter);
+        return this.sensorCache.getOrderedSensors().stream()
+                .filter(sensor -> sensor.getCode() != null)
+                .filter(predicate)
+                .map(Sensor::getId)
+                .collect(toList());
+    }
+
+    /**
+     * Open a cursor for the data of the specified query.
+     *
+     * @param query the query
+     *
+     * @return the data cursor
+     *
+     * @throws OwsExceptionReport in case an error occurs
+     */
+    private DataCursor getData(DataQuery query) throws OwsExceptionReport {
+        if (this.queryCompiler.canCompile(query)) {
+            return getData(this.queryCompiler.compile(query, getSensorIds(query)));
+        }
+        // the PostgreSQL driver only uses a server side cursor inside of a transaction
+        StatelessSession session = this.sessionFactory.openStatelessSession();
+        try {
+            Transaction transaction = session.beginTransaction();
+            return getData(session, transaction, query);
+        } catch (HibernateException e) {
+            // we are streaming, only close the session if an error occured
+            session.close();
+            throw new NoApplicableCodeException().causedBy(e);
+        } catch (OwsExceptionReport e) {
+            session.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open a cursor for the data of the specified compiled query.
+     *
+     * @param query the compiled query
+     *
+     * @return the data cursor
+     *
+     * @throws OwsExceptionReport in case an error occurs
+     */
+    private DataCursor getData(CompiledQuery query) throws OwsExceptionReport {
+        if (query.getSensors().isEmpty()) {
+            return new ListDataCursor(Collections.emptyList());
+        }
+        StatelessSession session = this.sessionFactory.openStatelessSession();
+        try {
+            Transaction transaction = session.beginTransaction();
+            NativeQuery<?> nativeQuery = session.createNativeQuery(query.getSql())
+                    .addScalar("sensor_id", StandardBasicTypes.INTEGER)
+                    .addScalar("date", StandardBasicTypes.TIMESTAMP)
+                    .addScalar("mean", StandardBasicTypes.DOUBLE)
+                    .addScalar("longitude", StandardBasicTypes.DOUBLE)
+                    .addScalar("latitude", StandardBasicTypes.DOUBLE)
+                    .setParameter("sensors", query.getSensorArray(), StandardBasicTypes.STRING);
+            if (query.getBegin().isPresent()) {
+                nativeQuery.setParameter("begin", query.getBegin().get(), StandardBasicTypes.TIMESTAMP);
+            }
+            if (query.getEnd().isPresent()) {
+                nativeQuery.setParameter("end", query.getEnd().get(), StandardBasicTypes.TIMESTAMP);
+            }
+            ScrollableResults results = nativeQuery
+                    .setComment("Getting observations")
+                    .setReadOnly(true)
+                    .setTimeout(this.statementTimeout)
+                    .setFetchSize(this.fetchSize)
+                    .scroll(ScrollMode.FORWARD_ONLY);
+            return new ScrollableDataCursor(results, session, transaction);
+        } catch (HibernateException e) {
+            session.close();
+            throw new NoApplicableCodeException().causedBy(e);
+        }
+    }
+
     /**
      * Get the data for the specified filters.
      *
-     * @param session the session
-     * @param filter  the filters
+     * @param session     the session
+     * @param transaction the transaction of the session
+     * @param query       the query
      *
-     * @return the observation stream
+     * @return the data cursor
      *
      * @throws OwsExceptionReport in case an error occurs
      */
-    @SuppressWarnings("unchecked")
-    private ObservationStream getData(Session session, ObservationFilter filter) throws OwsExceptionReport {
+    private DataCursor getData(StatelessSession session, Transaction transaction, DataQuery query)
+            throws OwsExceptionReport {
         QueryContext ctx = QueryContext.forData();
+        ObservationFilter filter = query.getFilter();
 
         Criteria criteria = session.createCriteria(Data.class)
                 .setComment("Getting observations")
@@ -197,16 +1133,138 @@ public class AWIGetObservationHandler extends AbstractGetObservationHandler {
         }
 
         if (!filter.getFeatures().isEmpty()) {
-            criteria.add(getFeatureCriterion(session, filter.getFeatures(), ctx));
+            criteria.add(getFeatureCriterion(filter.getFeatures(), ctx));
+        }
+
+        if (!query.getSensors().isEmpty()) {
+            criteria.add(Restrictions.in(ctx.getSensorPath(Sensor.ID), query.getSensors()));
+        }
+
+        if (query.getToken().isPresent()) {
+            criteria.add(getContinuationCriterion(query.getToken().get(), ctx));
+        }
+
+        if (query.isPaged()) {
+            // fetch one additional row to check if there is a next page
+            criteria.setMaxResults(this.pageSize + 1);
         }
 
         criteria.addOrder(Order.asc(ctx.getPlatformPath(Platform.CODE)));
         criteria.addOrder(Order.asc(ctx.getDevicePath(Device.CODE)));
         criteria.addOrder(Order.asc(ctx.getSensorPath(Sensor.CODE)));
-        criteria.addOrder(Order.asc(Data.TIME));
 
-        ScrollableResults results = criteria.setReadOnly(true).scroll(ScrollMode.FORWARD_ONLY);
-        return new ScrollableObservationStream(results, session, r -> createObservation((Data) r.get()[0]));
+        if (query.getAggregation().isPresent()) {
+            criteria.addOrder(Order.asc(BUCKET));
+            criteria.setProjection(getAggregationProjection(query.getAggregation().get(), ctx));
+        } else {
+            criteria.addOrder(Order.asc(Data.TIME));
+            // values with the same time are ordered by value to continue pages in between them
+            criteria.addOrder(Order.asc(Data.VALUE));
+            // only fetch primitive columns, everything else is resolved using the sensor cache
+            criteria.setProjection(Projections.projectionList()
+                    .add(Projections.property(ctx.getSensorPath(Sensor.ID)))
+                    .add(Projections.property(ctx.getDataPath(Data.TIME)))
+                    .add(Projections.property(ctx.getDataPath(Data.VALUE)))
+                    .add(Projections.property(ctx.getDataPath(Data.LONGITUDE)))
+                    .add(Projections.property(ctx.getDataPath(Data.LATITUDE))));
+        }
+
+        ScrollableResults results = criteria.setReadOnly(true)
+                .setTimeout(this.statementTimeout)
+                .setFetchSize(this.fetchSize)
+                .scroll(ScrollMode.FORWARD_ONLY);
+        return new ScrollableDataCursor(results, session, transaction);
+    }
+
+    /**
+     * Get the projection grouping the values of every sensor into the time buckets of the aggregation. The tuples have
+     * the same layout as the tuples of unaggregated queries, with the begin of the bucket as time and the mean
+     * position of the values in the bucket. The codes are only grouped to be able to order by them.
+     *
+     * @param aggregation the aggregation
+     * @param ctx         the query context
+     *
+     * @return the projection
+     */
+    private static Projection getAggregationProjection(Aggregation aggregation, QueryContext ctx) {
+        long interval = aggregation.getInterval();
+        // timestamps are stored as UTC, the bucket is computed on the epoch milliseconds
+        String bucket = String.format(Locale.ROOT, "to_timestamp(floor(extract(epoch from {alias}.date) * 1000 / %d)"
+                                                   + " * %d / 1000.0) at time zone 'UTC'", interval, interval);
+        String value = ctx.getDataPath(Data.VALUE);
+        Projection aggregate;
+        switch (aggregation.getFunction()) {
+            case MIN:
+                aggregate = Projections.min(value);
+                break;
+            case MAX:
+                aggregate = Projections.max(value);
+                break;
+            case COUNT:
+                aggregate = Projections.count(value);
+                break;
+            case MEAN:
+            default:
+                aggregate = Projections.avg(value);
+                break;
+        }
+        return Projections.projectionList()
+                .add(Projections.groupProperty(ctx.getSensorPath(Sensor.ID)))
+                .add(Projections.alias(Projections.sqlGroupProjection(bucket + " as " + BUCKET, bucket,
+                                                                      new String[] { BUCKET },
+                                                                      new Type[] { StandardBasicTypes.TIMESTAMP }),
+                                       BUCKET))
+                .add(aggregate)
+                .add(Projections.avg(ctx.getDataPath(Data.LONGITUDE)))
+                .add(Projections.avg(ctx.getDataPath(Data.LATITUDE)))
+                .add(Projections.groupProperty(ctx.getPlatformPath(Platform.CODE)))
+                .add(Projections.groupProperty(ctx.getDevicePath(Device.CODE)))
+                .add(Projections.groupProperty(ctx.getSensorPath(Sensor.CODE)));
+    }
+
+    /**
+     * Get a keyset criterion that selects all rows following the position of the continuation token in the order of
+     * platform, device and sensor code, time and value.
+     *
+     * @param token the continuation token
+     * @param ctx   the query context
+     *
+     * @return the criterion
+     */
+    private static Criterion getContinuationCriterion(ContinuationToken token, QueryContext ctx) {
+        String platform = ctx.getPlatformPath(Platform.CODE);
+        String device = ctx.getDevicePath(Device.CODE);
+        String sensor = ctx.getSensorPath(Sensor.CODE);
+        String time = ctx.getDataPath(Data.TIME);
+        Criterion following = Restrictions.gt(time, new Date(token.getTime()));
+        if (token.getValue().isPresent()) {
+            following = Restrictions.or(following, Restrictions.and(
+                    Restrictions.eq(time, new Date(token.getTime())),
+                    Restrictions.gt(ctx.getDataPath(Data.VALUE), token.getValue().getAsDouble())));
+        }
+        Criterion samePlatform = Restrictions.eq(platform, token.getPlatform());
+        Criterion sameDevice = Restrictions.eq(device, token.getDevice());
+        Criterion sameSensor = Restrictions.eq(sensor, token.getSensor());
+        // the leading bound on the platform allows the planner to seek instead of filtering every row
+        return Restrictions.and(
+                Restrictions.ge(platform, token.getPlatform()),
+                Restrictions.or(
+                        Restrictions.gt(platform, token.getPlatform()),
+                        Restrictions.and(samePlatform, Restrictions.gt(device, token.getDevice())),
+                        Restrictions.and(samePlatform, sameDevice, Restrictions.gt(sensor, token.getSensor())),
+                        Restrictions.and(samePlatform, sameDevice, sameSensor, following)));
+    }
+
+    /**
+     * Checks if the client requested the values to be merged into {@code SWEArrayObservation}s.
+     *
+     * @param request the request
+     *
+     * @return if the values should be merged
+     */
+    private static boolean isMergeObservationValues(GetObservationRequest request) {
+        return request.isSetMergeObservationValues() || request.getExtensions()
+                .getBooleanExtension(Sos2Constants.Extensions.MergeObservationsIntoDataArray);
     }
 
     /**
@@ -244,10 +1302,19 @@ public class AWIGetObservationHandler extends AbstractGetObservationHandler {
     private Disjunction getSpatialFiltersCriterion(Set<SpatialFilter> filters, QueryContext ctx) throws
             OwsExceptionReport {
         CompositeException errors = new CompositeException();
-        ThrowingBiFunction<String, SpatialFilter, Criterion, OwsExceptionReport> get = SpatialRestrictions::filter;
-        Disjunction criterion = Stream.concat(
-                filters.stream().map(errors.wrapFunction(get.curryFirst(ctx.getDataPath(Data.GEOMETRY)))),
-                filters.stream().map(errors.wrapFunction(get.curryFirst(ctx.getPlatformPath(Platform.GEOMETRY)))))
+        ThrowingFunction<SpatialFilter, Criterion, OwsExceptionReport> data = f -> {
+            Criterion criterion = getSpatialFilterCriterion(f, ctx.getDataPath(Data.GEOMETRY),
+                                                            ctx.getDataPath(Data.LONGITUDE),
+                                                            ctx.getDataPath(Data.LATITUDE));
+            return getTrackCriterion(f, ctx)
+                    .map(track -> (Criterion) Restrictions.and(track, criterion))
+                    .orElse(criterion);
+        };
+        ThrowingFunction<SpatialFilter, Criterion, OwsExceptionReport> platform = f -> getSpatialFilterCriterion(
+                f, ctx.getPlatformPath(Platform.GEOMETRY), ctx.getPlatformPath(Platform.LONGITUDE),
+                ctx.getPlatformPath(Platform.LATITUDE));
+        Disjunction criterion = Stream.concat(filters.stream().map(errors.wrapFunction(data)),
+                                              filters.stream().map(errors.wrapFunction(platform)))
                 .filter(Optional::isPresent)
                 .map(Optional::get)
                 .collect(HibernateCollectors.toDisjunction());
@@ -256,22 +1323,132 @@ public class AWIGetObservationHandler extends AbstractGetObservationHandler {
         return criterion;
     }
 
+    /**
+     * Get a criterion for the supplied spatial filter. The geometries are formulas on the raw coordinates, so the
+     * exact test has to evaluate PostGIS functions for every row. If possible, the rows are first restricted to the
+     * bounding box of the filter using the coordinate columns, so the exact test is only applied to candidates.
+     *
+     * @param filter    the spatial filter
+     * @param geometry  the geometry property
+     * @param longitude the longitude property
+     * @param latitude  the latitude property
+     *
+     * @return the criterion
+     *
+     * @throws OwsExceptionReport if the filter is not supported
+     */
+    private static Criterion getSpatialFilterCriterion(SpatialFilter filter, String geometry, String longitude,
+                                                       String latitude) throws OwsExceptionReport {
+        Criterion exact = SpatialRestrictions.filter(geometry, filter);
+        return getBoundingBoxCriterion(filter, longitude, latitude)
+                .map(bbox -> (Criterion) Restrictions.and(bbox, exact))
+                .orElse(exact);
+    }
+
+    /**
+     * Get a criterion restricting the values to the time ranges in which the platforms were inside of the bounding
+     * box of the supplied spatial filter. Platforms of the sensor cache that are not indexed, platforms with too many
+     * time ranges and values that are newer than the index are not restricted. Platforms that never entered the
+     * bounding box only match values that are newer than the index, so the criterion only grows with the platforms
+     * that are relevant for the filter. Until the index is loaded, only the spatial filter itself is applied.
+     *
+     * @param filter the spatial filter
+     * @param ctx    the query context
+     *
+     * @return the criterion or an empty {@code Optional} if the values can not be restricted
+     */
+    private Optional<Criterion> getTrackCriterion(SpatialFilter filter, QueryContext ctx) {
+        DateTime end = this.trackIndex.getEnd();
+        Optional<Envelope> envelope = getBoundingBox(filter);
+        if (end == null || !envelope.isPresent()) {
+            return Optional.empty();
+        }
+        Map<String, List<Interval>> ranges = this.trackIndex.getTimeRanges(envelope.get());
+        List<Sensor> sensors = this.sensorCache.getOrderedSensors();
+        if (ranges.isEmpty() || sensors.isEmpty()) {
+            return Optional.empty();
+        }
+        Set<String> unindexed = sensors.stream()
+                .map(sensor -> sensor.getDevice().getPlatform().getCode())
+                .filter(code -> !ranges.containsKey(code))
+                .collect(toSet());
+        String platform = ctx.getPlatformPath(Platform.CODE);
+        String time = ctx.getDataPath(Data.TIME);
+        Disjunction disjunction = Restrictions.disjunction();
+        disjunction.add(Restrictions.gt(time, end.toDate()));
+        if (!unindexed.isEmpty()) {
+            disjunction.add(Restrictions.in(platform, unindexed));
+        }
+        ranges.forEach((code, intervals) -> {
+            if (intervals.isEmpty()) {
+                // the platform never entered the bounding box
+                return;
+            }
+            if (intervals.size() > MAX_TRACK_RANGES) {
+                disjunction.add(Restrictions.eq(platform, code));
+            } else {
+                intervals.stream()
+                        .map(i -> Restrictions.and(Restrictions.eq(platform, code),
+                                                   Restrictions.between(time, i.getStart().toDate(),
+                                                                        i.getEnd().toDate())))
+                        .forEach(disjunction::add);
+            }
+        });
+        return Optional.of(disjunction);
+    }
+
+    /**
+     * Get a criterion restricting the coordinates to the bounding box of the supplied spatial filter.
+     *
+     * @param filter    the spatial filter
+     * @param longitude the longitude property
+     * @param latitude  the latitude property
+     *
+     * @return the criterion or an empty {@code Optional} if the filter can not be reduced to a bounding box
+     */
+    private static Optional<Criterion> getBoundingBoxCriterion(SpatialFilter filter, String longitude,
+                                                               String latitude) {
+        return getBoundingBox(filter).map(envelope -> Restrictions.and(
+                Restrictions.between(longitude, envelope.getMinX(), envelope.getMaxX()),
+                Restrictions.between(latitude, envelope.getMinY(), envelope.getMaxY())));
+    }
+
+    /**
+     * Get the bounding box of the supplied spatial filter if the filter can only match points inside of it. This is
+     * only the case for some operators and for geometries in the coordinate reference system of the database.
+     *
+     * @param filter the spatial filter
+     *
+     * @return the bounding box or an empty {@code Optional}
+     */
+    private static Optional<Envelope> getBoundingBox(SpatialFilter filter) {
+        if (!BOUNDED_SPATIAL_OPERATORS.contains(filter.getOperator()) || filter.getGeometry() == null) {
+            return Optional.empty();
+        }
+        int srid = filter.getGeometry().getSRID();
+        if (srid != EPSG_4326 && srid != 0) {
+            return Optional.empty();
+        }
+        ReferencedEnvelope envelope = filter.getGeometry().toEnvelope();
+        if (!envelope.isSetEnvelope()) {
+            return Optional.empty();
+        }
+        return Optional.of(envelope.getEnvelope());
+    }
+
     /**
      * Get a criterion for the supplied feature identifiers.
      *
-     * @param session the session
-     * @param filter  the feature identifiers
-     * @param ctx     the query context
+     * @param filter the feature identifiers
+     * @param ctx    the query context
      *
      * @return the criterion
      */
-    private Disjunction getFeatureCriterion(Session session, Set<String> filter, QueryContext ctx) {
-        @SuppressWarnings("unchecked")
-        List<Expedition> expeditions = session.createCriteria(Expedition.class)
-                .setComment("Getting expedition times for observation feature filter")
-                .add(Restrictions.in(Expedition.NAME, filter))
-                .setReadOnly(true)
-                .list();
+    private Disjunction getFeatureCriterion(Set<String> filter, QueryContext ctx) {
+        List<Expedition> expeditions = filter.stream()
+                .map(this.featureCache::getExpeditions)
+                .flatMap(List::stream)
+                .collect(toList());
 
         Disjunction disjunction = Restrictions.disjunction();
         Set<String> expeditionNames = expeditions.stream().map(Expedition::getName).collect(toSet());
@@ -286,61 +1463,6 @@ public class AWIGetObservationHandler extends AbstractGetObservationHandler {
         return disjunction;
     }
 
-    /**
-     * Create a O&amp;M Observation for the data object.
-     *
-     * @param data the data object
-     *
-     * @return the observation
-     */
-    private OmObservation createObservation(Data data) {
-        Sensor sensor = data.getSensor();
-        Device device = sensor.getDevice();
-        Platform platform = device.getPlatform();
-        String procedureCode = String.format("%s:%s", platform.getCode(), device.getCode());
-        String procedureName = String.format("%s - %s", platform.getName(), device.getName());
-        DateTime dateTime = new DateTime(data.getTime());
-        TimeInstant phenomenonTime = new TimeInstant(dateTime);
-        TimeInstant resultTime = phenomenonTime;
-
-        String feature = featureCache.getFeatureId(platform.getCode(), dateTime);
-
-        SosProcedureDescriptionUnknownType procedureDescription
-                = new SosProcedureDescriptionUnknownType(procedureCode);
-        procedureDescription.setName(new CodeType(procedureName));
-
-        OmObservableProperty observableProperty = new OmObservableProperty(sensor.getCode());
-        observableProperty.setName(new CodeType(sensor.getName()));
-        observableProperty.setUnit(sensor.getUnit());
-        observableProperty.setValueType(SweConstants.VT_QUANTITY);
-
-        SamplingFeature samplingFeature = new SamplingFeature(new CodeWithAuthority(feature));
-        samplingFeature.setName(new CodeType(feature));
-
-        OmObservationConstellation observationConstellation = new OmObservationConstellation();
-        observationConstellation.setObservationType(OmConstants.OBS_TYPE_MEASUREMENT);
-        observationConstellation.setProcedure(procedureDescription);
-        observationConstellation.setFeatureOfInterest(samplingFeature);
-        observationConstellation.setObservableProperty(observableProperty);
-
-        QuantityValue value = new QuantityValue(data.getValue(), sensor.getUnit());
-        SingleObservationValue<BigDecimal> observationValue = new SingleObservationValue<>(phenomenonTime, value);
-
-        OmObservation observation = new OmObservation();
-        observation.setResultTime(resultTime);
-        observation.setObservationConstellation(observationConstellation);
-        observation.setValue(observationValue);
-
-
-        if (platform.isMobile()) {
-            observation.addParameter(new NamedValue<>(
-                    new ReferenceType(OmConstants.PARAM_NAME_SAMPLING_GEOMETRY),
-                    new GeometryValue(JTSConverter.convert(data.getGeometry()))));
-        }
-
-        return observation;
-    }
-
     /**
      * Get a criterion for the supplied temporal filter.
      *
@@ -393,4 +1515,18 @@ public class AWIGetObservationHandler extends AbstractGetObservationHandler {
         return Restrictions.in(ctx.getSensorPath(Sensor.CODE), filter);
     }
 
+    /**
+     * Thread factory for the daemon threads reading the results of parallel queries.
+     */
+    private static class QueryThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "observation-query-" + this.counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
 }
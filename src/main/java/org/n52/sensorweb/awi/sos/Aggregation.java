@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import java.util.Locale;
+import java.util.Objects;
+
+import org.joda.time.Duration;
+import org.joda.time.Period;
+
+/**
+ * A temporal aggregation of the values of a series into fixed time buckets.
+ *
+ * @author Christian Autermann
+ */
+public final class Aggregation {
+    private static final long MIN_INTERVAL = 1000;
+    private final Function function;
+    private final long interval;
+
+    /**
+     * Create a new {@code Aggregation}.
+     *
+     * @param function the aggregate function
+     * @param interval the bucket size in milliseconds
+     */
+    public Aggregation(Function function, long interval) {
+        if (interval < MIN_INTERVAL) {
+            throw new IllegalArgumentException("interval has to be at least one second");
+        }
+        this.function = Objects.requireNonNull(function);
+        this.interval = interval;
+    }
+
+    /**
+     * Get the aggregate function.
+     *
+     * @return the function
+     */
+    public Function getFunction() {
+        return function;
+    }
+
+    /**
+     * Get the size of the time buckets.
+     *
+     * @return the interval in milliseconds
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(function, interval);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final Aggregation other = (Aggregation) obj;
+        return this.interval == other.interval && this.function == other.function;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Aggregation{function=%s, interval=%s}", function, Duration.millis(interval));
+    }
+
+    /**
+     * Parse an aggregation.
+     *
+     * @param function the name of the aggregate function
+     * @param interval the ISO 8601 duration of the time buckets
+     *
+     * @return the aggregation
+     *
+     * @throws IllegalArgumentException if the function or interval is not valid
+     */
+    public static Aggregation parse(String function, String interval) {
+        // months and years do not have a fixed length
+        Duration duration = Period.parse(interval).toStandardDuration();
+        return new Aggregation(Function.valueOf(function.toUpperCase(Locale.ROOT)), duration.getMillis());
+    }
+
+    /**
+     * The supported aggregate functions.
+     */
+    public enum Function {
+        MEAN,
+        MIN,
+        MAX,
+        COUNT
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import static org.n52.sensorweb.awi.sos.TabularColumns.FEATURE;
+import static org.n52.sensorweb.awi.sos.TabularColumns.LATITUDE;
+import static org.n52.sensorweb.awi.sos.TabularColumns.LONGITUDE;
+import static org.n52.sensorweb.awi.sos.TabularColumns.OBSERVED_PROPERTY;
+import static org.n52.sensorweb.awi.sos.TabularColumns.PROCEDURE;
+import static org.n52.sensorweb.awi.sos.TabularColumns.TIME;
+import static org.n52.sensorweb.awi.sos.TabularColumns.UNIT;
+import static org.n52.sensorweb.awi.sos.TabularColumns.VALUE;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.UnaryOperator;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampMilliTZVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import org.n52.sensorweb.awi.data.DataCursor;
+import org.n52.sensorweb.awi.data.DataPoint;
+import org.n52.sensorweb.awi.data.FeatureCache;
+import org.n52.sensorweb.awi.data.SensorCache;
+import org.n52.sensorweb.awi.data.entities.Sensor;
+
+/**
+ * Writes the {@link DataPoint data points} of a {@link DataCursor} as an Arrow IPC stream of record batches with
+ * {@value #BATCH_SIZE} rows. The time is a millisecond time stamp in UTC, the procedure, observed property, feature
+ * and unit columns are dictionary encoded. As an Arrow stream can not extend its dictionaries, they are created
+ * upfront from the sensors selected by the request and the features of their platforms.
+ *
+ * The cursor is consumed and closed by {@link #write(OutputStream)}, instances can only be written once.
+ *
+ * @author Christian Autermann
+ */
+public class ArrowObservationWriter implements TabularWriter {
+    private static final String UTC = "UTC";
+    private static final int BATCH_SIZE = 8192;
+    private static final ArrowType.Int DICTIONARY_INDEX_TYPE = new ArrowType.Int(32, true);
+    // the allocator of the Arrow buffers is only created if the format is used
+    private static final BufferAllocator ROOT_ALLOCATOR = new RootAllocator(Long.MAX_VALUE);
+    private final DataCursor cursor;
+    private final TabularColumns columns;
+    private final Optional<String> continuationToken;
+    private final Collection<Sensor> sensors;
+
+    /**
+     * Create a new {@code ArrowObservationWriter}.
+     *
+     * @param cursor            the cursor of the data points
+     * @param sensorCache       the sensor cache
+     * @param featureCache      the feature cache
+     * @param aggregation       the aggregation of the data points
+     * @param continuationToken the token referencing the next page
+     * @param sensors           the sensors selected by the request, used for the dictionaries
+     */
+    public ArrowObservationWriter(DataCursor cursor, SensorCache sensorCache, FeatureCache featureCache,
+                                  Optional<Aggregation> aggregation, Optional<String> continuationToken,
+                                  Collection<Sensor> sensors) {
+        this.cursor = Objects.requireNonNull(cursor);
+        this.columns = new TabularColumns(sensorCache, featureCache, aggregation, UnaryOperator.identity());
+        this.continuationToken = Objects.requireNonNull(continuationToken);
+        this.sensors = Objects.requireNonNull(sensors);
+    }
+
+    @Override
+    public TabularFormat getFormat() {
+        return TabularFormat.ARROW;
+    }
+
+    @Override
+    public Optional<String> getContinuationToken() {
+        return continuationToken;
+    }
+
+    @Override
+    public void write(OutputStream out) throws IOException {
+        try {
+            writeArrow(out);
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        this.cursor.close();
+    }
+
+    /**
+     * Write the data points as an Arrow IPC stream of record batches.
+     *
+     * @param out the output stream
+     *
+     * @throws IOException if writing fails
+     */
+    private void writeArrow(OutputStream out) throws IOException {
+        StringDictionary procedures = new StringDictionary(0, PROCEDURE);
+        StringDictionary properties = new StringDictionary(1, OBSERVED_PROPERTY);
+        StringDictionary features = new StringDictionary(2, FEATURE);
+        StringDictionary units = new StringDictionary(3, UNIT);
+        Map<Integer, int[]> indices = new HashMap<>(this.sensors.size());
+        for (Sensor sensor : this.sensors) {
+            TabularColumns.Series s = this.columns.getSeries(sensor.getId());
+            indices.put(sensor.getId(), new int[] { procedures.add(s.getProcedure()),
+                                                    properties.add(s.getObservedProperty()),
+                                                    units.add(s.getUnit()) });
+            this.columns.getFeatures(s).forEach(features::add);
+        }
+
+        Schema schema = new Schema(Arrays.asList(
+                new Field(TIME, FieldType.nullable(new ArrowType.Timestamp(TimeUnit.MILLISECOND, UTC)), null),
+                procedures.getField(),
+                properties.getField(),
+                features.getField(),
+                new Field(VALUE, FieldType.nullable(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)),
+                          null),
+                units.getField(),
+                new Field(LONGITUDE, FieldType.nullable(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)),
+                          null),
+                new Field(LATITUDE, FieldType.nullable(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)),
+                          null)));
+
+        List<FieldVector> dictionaries = new ArrayList<>(4);
+        String name = TabularFormat.ARROW.name();
+        try (BufferAllocator allocator = ROOT_ALLOCATOR.newChildAllocator(name, 0, Long.MAX_VALUE);
+             VectorSchemaRoot root = VectorSchemaRoot.create(schema, allocator)) {
+            try {
+                DictionaryProvider.MapDictionaryProvider provider = new DictionaryProvider.MapDictionaryProvider();
+                for (StringDictionary dictionary : Arrays.asList(procedures, properties, features, units)) {
+                    Dictionary d = dictionary.createDictionary(allocator);
+                    dictionaries.add(d.getVector());
+                    provider.put(d);
+                }
+
+                TimeStampMilliTZVector time = (TimeStampMilliTZVector) root.getVector(TIME);
+                IntVector procedure = (IntVector) root.getVector(PROCEDURE);
+                IntVector property = (IntVector) root.getVector(OBSERVED_PROPERTY);
+                IntVector feature = (IntVector) root.getVector(FEATURE);
+                Float8Vector value = (Float8Vector) root.getVector(VALUE);
+                IntVector unit = (IntVector) root.getVector(UNIT);
+                Float8Vector longitude = (Float8Vector) root.getVector(LONGITUDE);
+                Float8Vector latitude = (Float8Vector) root.getVector(LATITUDE);
+
+                // the writer is not closed as this would close the output stream
+                ArrowStreamWriter writer = new ArrowStreamWriter(root, provider, out);
+                writer.start();
+                boolean hasNext = this.cursor.hasNext();
+                while (hasNext) {
+                    root.allocateNew();
+                    int row = 0;
+                    for (; row < BATCH_SIZE && hasNext; ++row, hasNext = this.cursor.hasNext()) {
+                        DataPoint data = this.cursor.next();
+                        TabularColumns.Series s = this.columns.getSeries(data.getSensor());
+                        int[] index = indices.get(data.getSensor());
+                        time.setSafe(row, data.getTime());
+                        value.setSafe(row, data.getValue());
+                        setIndex(procedure, row, index == null ? -1 : index[0]);
+                        setIndex(property, row, index == null ? -1 : index[1]);
+                        setIndex(unit, row, index == null ? -1 : index[2]);
+                        setIndex(feature, row, features.indexOf(this.columns.getFeature(s, data)));
+                        if (s.isMobile() && data.hasLocation()) {
+                            longitude.setSafe(row, data.getLongitude());
+                            latitude.setSafe(row, data.getLatitude());
+                        } else {
+                            longitude.setNull(row);
+                            latitude.setNull(row);
+                        }
+                    }
+                    root.setRowCount(row);
+                    writer.writeBatch();
+                }
+                writer.end();
+                out.flush();
+            } finally {
+                dictionaries.forEach(FieldVector::close);
+            }
+        }
+    }
+
+    /**
+     * Set the dictionary index of a row. Values missing from the dictionary, e.g. because the caches were updated
+     * while writing, are written as {@code null}.
+     *
+     * @param vector the index vector
+     * @param row    the row
+     * @param index  the dictionary index or {@code -1}
+     */
+    private static void setIndex(IntVector vector, int row, int index) {
+        if (index < 0) {
+            vector.setNull(row);
+        } else {
+            vector.setSafe(row, index);
+        }
+    }
+
+    /**
+     * The values of a dictionary encoded Arrow column.
+     */
+    private static class StringDictionary {
+        private final List<String> values = new ArrayList<>();
+        private final Map<String, Integer> indices = new HashMap<>();
+        private final String name;
+        private final DictionaryEncoding encoding;
+
+        /**
+         * Create a new {@code StringDictionary}.
+         *
+         * @param id   the dictionary id
+         * @param name the name of the column
+         */
+        StringDictionary(long id, String name) {
+            this.name = name;
+            this.encoding = new DictionaryEncoding(id, false, DICTIONARY_INDEX_TYPE);
+        }
+
+        /**
+         * Add a value to this dictionary.
+         *
+         * @param value the value
+         *
+         * @return the index of the value
+         */
+        int add(String value) {
+            return this.indices.computeIfAbsent(value, v -> {
+                this.values.add(v);
+                return this.values.size() - 1;
+            });
+        }
+
+        /**
+         * Get the index of a value.
+         *
+         * @param value the value
+         *
+         * @return the index or {@code -1} if the value is not part of this dictionary
+         */
+        int indexOf(String value) {
+            return this.indices.getOrDefault(value, -1);
+        }
+
+        /**
+         * Get the field of the dictionary encoded column.
+         *
+         * @return the field
+         */
+        Field getField() {
+            return new Field(this.name, new FieldType(true, DICTIONARY_INDEX_TYPE, this.encoding), null);
+        }
+
+        /**
+         * Create the dictionary containing the values. The vector of the dictionary has to be closed by the caller.
+         *
+         * @param allocator the allocator
+         *
+         * @return the dictionary
+         */
+        Dictionary createDictionary(BufferAllocator allocator) {
+            VarCharVector vector = new VarCharVector(this.name, allocator);
+            vector.allocateNew();
+            for (int i = 0; i < this.values.size(); ++i) {
+                vector.setSafe(i, this.values.get(i).getBytes(StandardCharsets.UTF_8));
+            }
+            vector.setValueCount(this.values.size());
+            return new Dictionary(vector, this.encoding);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import org.n52.janmayen.http.HTTPStatus;
+import org.n52.shetland.ogc.ows.exception.NoApplicableCodeException;
+import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
+import org.n52.shetland.ogc.ows.service.OwsServiceRequest;
+
+/**
+ * Limits the number of concurrently executed requests of an operation, so a single operation can not take every
+ * database connection.
+ * <p>
+ * Requests exceeding the limit are queued per client, identified by the IP address and the {@code User-Agent}
+ * header. Whenever a request completes, the next request is taken from the queues of the waiting clients in turn,
+ * so a client with many parallel requests does not delay the requests of other clients. If the queue is full or a
+ * request waited longer than the queue timeout, the request is rejected with HTTP status 503.
+ *
+ * @author Christian Autermann
+ */
+public class Bulkhead {
+    private static final Logger LOG = LoggerFactory.getLogger(Bulkhead.class);
+    private final int concurrency;
+    private final int queueSize;
+    private final long queueTimeout;
+    private final Map<String, Deque<Waiter>> queues = new LinkedHashMap<>();
+    private int active;
+    private int queued;
+
+    /**
+     * Create a new {@code Bulkhead}.
+     *
+     * @param concurrency  the maximum number of concurrently executed requests
+     * @param queueSize    the maximum number of waiting requests
+     * @param queueTimeout the maximum time in milliseconds a request waits
+     */
+    public Bulkhead(int concurrency, int queueSize, long queueTimeout) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency has to be positive");
+        }
+        if (queueSize < 0 || queueTimeout < 0) {
+            throw new IllegalArgumentException("queueSize and queueTimeout may not be negative");
+        }
+        this.concurrency = concurrency;
+        this.queueSize = queueSize;
+        this.queueTimeout = queueTimeout;
+    }
+
+    /**
+     * Create a {@code Bulkhead} that does not limit the number of concurrent requests.
+     *
+     * @return the bulkhead
+     */
+    public static Bulkhead unlimited() {
+        return new Bulkhead(Integer.MAX_VALUE, 0, 0);
+    }
+
+    /**
+     * Wait until the request may be executed. The returned permit has to be closed as soon as the request released
+     * its resources, e.g. after the response was written.
+     *
+     * @param request the request
+     *
+     * @return the permit
+     *
+     * @throws OwsExceptionReport if the queue is full, the queue timeout elapsed or the thread was interrupted
+     */
+    public Permit acquire(OwsServiceRequest request) throws OwsExceptionReport {
+        String client = getClient(request);
+        String operation = request.getOperationName();
+        Waiter waiter = new Waiter();
+        synchronized (this) {
+            if (this.queued == 0 && this.active < this.concurrency) {
+                ++this.active;
+                return new Permit();
+            }
+            if (this.queued >= this.queueSize) {
+                LOG.debug("Rejecting {} request of {}, {} requests are waiting", operation, client, this.queued);
+                throw unavailable("Too many concurrent %s requests, please try again later", operation);
+            }
+            this.queues.computeIfAbsent(client, c -> new ArrayDeque<>()).add(waiter);
+            ++this.queued;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.queueTimeout);
+            try {
+                while (!waiter.granted) {
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remaining <= 0) {
+                        remove(client, waiter);
+                        LOG.debug("Rejecting {} request of {} after {} ms", operation, client, this.queueTimeout);
+                        throw unavailable("The %s request could not be executed within %d ms, please try again later",
+                                          operation, this.queueTimeout);
+                    }
+                    wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (waiter.granted) {
+                    release();
+                } else {
+                    remove(client, waiter);
+                }
+                throw new NoApplicableCodeException().causedBy(e)
+                        .withMessage("Interrupted while waiting for the execution of the %s request", operation);
+            }
+            return new Permit();
+        }
+    }
+
+    /**
+     * Remove a waiting request that was not granted.
+     *
+     * @param client the client
+     * @param waiter the waiting request
+     */
+    private void remove(String client, Waiter waiter) {
+        Deque<Waiter> queue = this.queues.get(client);
+        if (queue != null && queue.remove(waiter)) {
+            --this.queued;
+            if (queue.isEmpty()) {
+                this.queues.remove(client);
+            }
+        }
+    }
+
+    /**
+     * Release a permit and grant the waiting requests of the next clients.
+     */
+    private synchronized void release() {
+        --this.active;
+        boolean granted = false;
+        while (this.active < this.concurrency && !this.queues.isEmpty()) {
+            Iterator<Map.Entry<String, Deque<Waiter>>> iter = this.queues.entrySet().iterator();
+            Map.Entry<String, Deque<Waiter>> next = iter.next();
+            iter.remove();
+            Deque<Waiter> queue = next.getValue();
+            queue.poll().granted = true;
+            --this.queued;
+            ++this.active;
+            granted = true;
+            // the client is served again after all other waiting clients
+            if (!queue.isEmpty()) {
+                this.queues.put(next.getKey(), queue);
+            }
+        }
+        if (granted) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Create the exception for a rejected request.
+     *
+     * @param message the message
+     * @param args    the message arguments
+     *
+     * @return the exception
+     */
+    private static OwsExceptionReport unavailable(String message, Object... args) {
+        return new NoApplicableCodeException().withMessage(message, args).setStatus(HTTPStatus.SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Get the identifier of the client that sent the request.
+     *
+     * @param request the request
+     *
+     * @return the IP address and {@code User-Agent} of the client
+     */
+    private static String getClient(OwsServiceRequest request) {
+        String address = "";
+        if (request.isSetRequestContext()) {
+            address = request.getRequestContext().getIPAddress().map(Object::toString).orElse("");
+        }
+        String userAgent = null;
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes) {
+            HttpServletRequest servletRequest = ((ServletRequestAttributes) attributes).getRequest();
+            userAgent = servletRequest.getHeader(HttpHeaders.USER_AGENT);
+        }
+        return userAgent == null ? address : address + ' ' + userAgent;
+    }
+
+    /**
+     * A request waiting for its execution.
+     */
+    private static class Waiter {
+        private boolean granted;
+    }
+
+    /**
+     * The permission to execute a request. Closing the permit more than once has no effect.
+     */
+    public final class Permit implements AutoCloseable {
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Permit() {
+        }
+
+        @Override
+        public void close() {
+            if (this.closed.compareAndSet(false, true)) {
+                release();
+            }
+        }
+    }
+
+}
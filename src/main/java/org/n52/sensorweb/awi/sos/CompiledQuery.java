@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * A native SQL statement of one of the shapes created by the {@link QueryCompiler} together with its parameters.
+ *
+ * @author Christian Autermann
+ */
+public final class CompiledQuery {
+    private final String sql;
+    private final List<Integer> sensors;
+    private final Optional<Date> begin;
+    private final Optional<Date> end;
+
+    /**
+     * Create a new {@code CompiledQuery}.
+     *
+     * @param sql     the SQL statement
+     * @param sensors the ids of the sensors in the order of the result
+     * @param begin   the lower bound of the time
+     * @param end     the upper bound of the time
+     */
+    CompiledQuery(String sql, List<Integer> sensors, Optional<Date> begin, Optional<Date> end) {
+        this.sql = Objects.requireNonNull(sql);
+        this.sensors = Collections.unmodifiableList(sensors);
+        this.begin = Objects.requireNonNull(begin);
+        this.end = Objects.requireNonNull(end);
+    }
+
+    /**
+     * Get the SQL statement. Queries with the same shape share the same statement.
+     *
+     * @return the SQL statement
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Get the ids of the sensors in the order of the result.
+     *
+     * @return the sensor ids
+     */
+    public List<Integer> getSensors() {
+        return sensors;
+    }
+
+    /**
+     * Get the sensor ids as a PostgreSQL array literal to be bound to the {@code sensors} parameter.
+     *
+     * @return the array literal
+     */
+    public String getSensorArray() {
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < sensors.size(); ++i) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(sensors.get(i).intValue());
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * Get the value of the {@code begin} parameter.
+     *
+     * @return the lower bound of the time or an empty {@code Optional} if the statement has no lower bound
+     */
+    public Optional<Date> getBegin() {
+        return begin;
+    }
+
+    /**
+     * Get the value of the {@code end} parameter.
+     *
+     * @return the upper bound of the time or an empty {@code Optional} if the statement has no upper bound
+     */
+    public Optional<Date> getEnd() {
+        return end;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CompiledQuery{sensors=%d, begin=%s, end=%s}", sensors.size(),
+                             begin.orElse(null), end.orElse(null));
+    }
+}
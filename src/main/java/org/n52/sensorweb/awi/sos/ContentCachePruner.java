@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import static java.util.stream.Collectors.toSet;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.joda.time.DateTime;
+
+import org.n52.sos.cache.SosContentCache;
+
+/**
+ * Checks the filters of a request against the relationships in the {@link SosContentCache} to detect requests that
+ * can not match any value without accessing the database.
+ * <p>
+ * The procedure and offering filters select the sensors below the specified platforms or devices, so they are
+ * combined into scopes. A scope can only match if one of its offerings observes one of the requested observed
+ * properties and is related to one of the requested features. Requests ending before the first value of a scope are
+ * only rejected for stationary platforms, as the cached times of mobile platforms only cover their expeditions.
+ * Spatial filters are not checked, as the cached envelopes of mobile platforms are outdated until the next cache
+ * update.
+ *
+ * @author Christian Autermann
+ */
+public class ContentCachePruner {
+    private static final char SEPARATOR = ':';
+
+    /**
+     * Checks if the filter can match any value.
+     *
+     * @param cache  the content cache
+     * @param filter the filter
+     *
+     * @return {@code false} if the filter can not match any value
+     */
+    public boolean canMatch(SosContentCache cache, ObservationFilter filter) {
+        Objects.requireNonNull(cache);
+        Optional<Set<String>> scopes = getScopes(filter);
+        if (!scopes.isPresent()) {
+            return true;
+        }
+        Optional<TemporalFilterMatcher> temporal = filter.getTemporalFilters().isEmpty()
+                                                           ? Optional.empty()
+                                                           : TemporalFilterMatcher.of(filter.getTemporalFilters());
+        return scopes.get().stream().anyMatch(scope -> canMatch(cache, filter, temporal, scope));
+    }
+
+    /**
+     * Checks if the filter can match any value in the specified scope.
+     *
+     * @param cache    the content cache
+     * @param filter   the filter
+     * @param temporal the matcher for the temporal filters
+     * @param scope    the procedure identifier
+     *
+     * @return {@code false} if the filter can not match any value
+     */
+    private boolean canMatch(SosContentCache cache, ObservationFilter filter,
+                             Optional<TemporalFilterMatcher> temporal, String scope) {
+        Set<String> offerings = cache.getOfferings().stream()
+                .filter(offering -> contains(scope, offering))
+                .collect(toSet());
+        if (offerings.isEmpty()) {
+            // unknown to the cache, the database may know better
+            return true;
+        }
+        if (!filter.getProperties().isEmpty() &&
+            Collections.disjoint(filter.getProperties(),
+                                 collect(offerings, cache::getObservablePropertiesForOffering))) {
+            return false;
+        }
+        Set<String> features = collect(offerings, cache::getFeaturesOfInterestForOffering);
+        if (!filter.getFeatures().isEmpty() && Collections.disjoint(filter.getFeatures(), features)) {
+            return false;
+        }
+        if (temporal.isPresent() && isStationary(scope, features)) {
+            Optional<DateTime> begin = offerings.stream()
+                    .map(cache::getMinPhenomenonTimeForOffering)
+                    .filter(Objects::nonNull)
+                    .min(DateTime::compareTo);
+            if (begin.isPresent()) {
+                TemporalFilterMatcher matcher = temporal.get();
+                long first = begin.get().getMillis();
+                if (matcher.getEnd() < first || matcher.getEnd() == first && !matcher.isEndInclusive()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the scope belongs to a stationary platform. The only feature of stationary platforms is the
+     * platform itself, while mobile platforms have a feature for every expedition.
+     *
+     * @param scope    the procedure identifier
+     * @param features the features of the scope
+     *
+     * @return if the scope is stationary
+     */
+    private static boolean isStationary(String scope, Set<String> features) {
+        int first = scope.indexOf(SEPARATOR);
+        int second = first < 0 ? -1 : scope.indexOf(SEPARATOR, first + 1);
+        String platform = second < 0 ? scope : scope.substring(0, second);
+        return features.equals(Collections.singleton(platform));
+    }
+
+    /**
+     * Get the procedure identifiers selected by both the procedure and the offering filters.
+     *
+     * @param filter the filter
+     *
+     * @return the identifiers or an empty {@code Optional} if the request is not restricted to any procedure
+     */
+    private static Optional<Set<String>> getScopes(ObservationFilter filter) {
+        Set<String> procedures = filter.getProcedures();
+        Set<String> offerings = filter.getOfferings();
+        if (procedures.isEmpty() && offerings.isEmpty()) {
+            return Optional.empty();
+        } else if (offerings.isEmpty()) {
+            return Optional.of(procedures);
+        } else if (procedures.isEmpty()) {
+            return Optional.of(offerings);
+        }
+        Set<String> scopes = new HashSet<>();
+        for (String procedure : procedures) {
+            for (String offering : offerings) {
+                if (contains(procedure, offering)) {
+                    scopes.add(offering);
+                } else if (contains(offering, procedure)) {
+                    scopes.add(procedure);
+                }
+            }
+        }
+        return Optional.of(scopes);
+    }
+
+    /**
+     * Checks if the procedure is the same as or below of the scope.
+     *
+     * @param scope     the scope
+     * @param procedure the procedure
+     *
+     * @return if the scope contains the procedure
+     */
+    private static boolean contains(String scope, String procedure) {
+        return procedure.equals(scope) ||
+               procedure.length() > scope.length() &&
+               procedure.startsWith(scope) &&
+               procedure.charAt(scope.length()) == SEPARATOR;
+    }
+
+    /**
+     * Collect the related identifiers of the offerings.
+     *
+     * @param offerings the offerings
+     * @param getter    the function to get the related identifiers
+     *
+     * @return the related identifiers
+     */
+    private static Set<String> collect(Set<String> offerings, Function<String, Set<String>> getter) {
+        return offerings.stream().map(getter).filter(Objects::nonNull)
+                .flatMap(Set::stream).collect(toSet());
+    }
+}
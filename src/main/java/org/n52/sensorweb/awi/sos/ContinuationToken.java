@@ -0,0 +1,234 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.OptionalDouble;
+
+import org.n52.sensorweb.awi.data.DataPoint;
+import org.n52.sensorweb.awi.data.entities.Sensor;
+
+/**
+ * Opaque token that identifies the position of the last row of a {@code GetObservation} page. The token contains the
+ * key of the {@code ORDER BY} clause of the query (platform, device and sensor code, time and value), so the next page
+ * can be requested using a keyset predicate instead of an offset. As a sensor may have several values with the same
+ * time, the value breaks the tie between them. Tokens of aggregated queries have no value, as the time buckets are
+ * unique per sensor.
+ *
+ * @author Christian Autermann
+ */
+public final class ContinuationToken {
+    private static final byte VERSION_1 = 1;
+    private static final byte VERSION = 2;
+    private final String platform;
+    private final String device;
+    private final String sensor;
+    private final long time;
+    private final OptionalDouble value;
+
+    /**
+     * Create a new {@code ContinuationToken}.
+     *
+     * @param platform the platform code
+     * @param device   the device code
+     * @param sensor   the sensor code
+     * @param time     the time in milliseconds since the epoch
+     */
+    public ContinuationToken(String platform, String device, String sensor, long time) {
+        this(platform, device, sensor, time, OptionalDouble.empty());
+    }
+
+    /**
+     * Create a new {@code ContinuationToken}.
+     *
+     * @param platform the platform code
+     * @param device   the device code
+     * @param sensor   the sensor code
+     * @param time     the time in milliseconds since the epoch
+     * @param value    the value breaking the tie between values with the same time
+     */
+    public ContinuationToken(String platform, String device, String sensor, long time, OptionalDouble value) {
+        this.platform = Objects.requireNonNull(platform);
+        this.device = Objects.requireNonNull(device);
+        this.sensor = Objects.requireNonNull(sensor);
+        this.time = time;
+        this.value = Objects.requireNonNull(value);
+    }
+
+    /**
+     * Get the platform code.
+     *
+     * @return the platform code
+     */
+    public String getPlatform() {
+        return platform;
+    }
+
+    /**
+     * Get the device code.
+     *
+     * @return the device code
+     */
+    public String getDevice() {
+        return device;
+    }
+
+    /**
+     * Get the sensor code.
+     *
+     * @return the sensor code
+     */
+    public String getSensor() {
+        return sensor;
+    }
+
+    /**
+     * Get the time.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Get the value of the last row. If it is absent, the next page starts after all values of the time.
+     *
+     * @return the value
+     */
+    public OptionalDouble getValue() {
+        return value;
+    }
+
+    /**
+     * Create a copy of this token with a different time, pointing after all values of that time.
+     *
+     * @param time the time in milliseconds since the epoch
+     *
+     * @return the token
+     */
+    public ContinuationToken withTime(long time) {
+        return new ContinuationToken(platform, device, sensor, time);
+    }
+
+    /**
+     * Encode this token as a URL safe string.
+     *
+     * @return the encoded token
+     */
+    public String encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeUTF(this.platform);
+            out.writeUTF(this.device);
+            out.writeUTF(this.sensor);
+            out.writeLong(this.time);
+            out.writeBoolean(this.value.isPresent());
+            if (this.value.isPresent()) {
+                out.writeDouble(this.value.getAsDouble());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(platform, device, sensor, time, value);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final ContinuationToken other = (ContinuationToken) obj;
+        return this.time == other.time &&
+               Objects.equals(this.value, other.value) &&
+               Objects.equals(this.platform, other.platform) &&
+               Objects.equals(this.device, other.device) &&
+               Objects.equals(this.sensor, other.sensor);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ContinuationToken{platform=%s, device=%s, sensor=%s, time=%s, value=%s}",
+                             platform, device, sensor, Instant.ofEpochMilli(time), value);
+    }
+
+    /**
+     * Create a token pointing to the supplied data point.
+     *
+     * @param sensor the sensor of the data point
+     * @param data   the data point
+     *
+     * @return the token
+     */
+    public static ContinuationToken of(Sensor sensor, DataPoint data) {
+        return new ContinuationToken(sensor.getDevice().getPlatform().getCode(),
+                                     sensor.getDevice().getCode(),
+                                     sensor.getCode(),
+                                     data.getTime(),
+                                     OptionalDouble.of(data.getValue()));
+    }
+
+    /**
+     * Decode a token that was created by {@link #encode()}.
+     *
+     * @param token the encoded token
+     *
+     * @return the token
+     *
+     * @throws IllegalArgumentException if the token is not valid
+     */
+    public static ContinuationToken decode(String token) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)))) {
+            byte version = in.readByte();
+            if (version != VERSION && version != VERSION_1) {
+                throw new IllegalArgumentException("unsupported token version");
+            }
+            String platform = in.readUTF();
+            String device = in.readUTF();
+            String sensor = in.readUTF();
+            long time = in.readLong();
+            // tokens of the first version never contain a value
+            OptionalDouble value = version != VERSION_1 && in.readBoolean()
+                                           ? OptionalDouble.of(in.readDouble())
+                                           : OptionalDouble.empty();
+            ContinuationToken decoded = new ContinuationToken(platform, device, sensor, time, value);
+            if (in.read() != -1) {
+                throw new IllegalArgumentException("trailing bytes in token");
+            }
+            return decoded;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("invalid token", e);
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.Statement;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.postgresql.PGConnection;
+
+/**
+ * {@link TabularWriter} that streams the CSV output of a PostgreSQL {@code COPY ... TO STDOUT} statement directly to
+ * the client. The rows are neither read through a {@code ResultSet} nor converted in Java, the connection is held
+ * until the statement is completely written.
+ *
+ * @author Christian Autermann
+ * @see QueryCompiler#compileCopy(DataQuery, java.util.List)
+ */
+public class CopyTabularWriter implements TabularWriter {
+    private static final String SET_UTC = "SET LOCAL TIME ZONE 'UTC'";
+    private final SessionFactory sessionFactory;
+    private final String statement;
+
+    /**
+     * Create a new {@code CopyTabularWriter}.
+     *
+     * @param sessionFactory the session factory
+     * @param statement      the {@code COPY} statement
+     */
+    public CopyTabularWriter(SessionFactory sessionFactory, String statement) {
+        this.sessionFactory = Objects.requireNonNull(sessionFactory);
+        this.statement = Objects.requireNonNull(statement);
+    }
+
+    @Override
+    public TabularFormat getFormat() {
+        return TabularFormat.CSV;
+    }
+
+    @Override
+    public Optional<String> getContinuationToken() {
+        return Optional.empty();
+    }
+
+    @Override
+    public void write(OutputStream out) throws IOException {
+        Session session = this.sessionFactory.openSession();
+        try {
+            // the statement only reads, the transaction just scopes the time zone setting
+            Transaction transaction = session.beginTransaction();
+            try {
+                session.doWork(connection -> {
+                    try (Statement stmt = connection.createStatement()) {
+                        stmt.execute(SET_UTC);
+                    }
+                    try {
+                        connection.unwrap(PGConnection.class).getCopyAPI().copyOut(this.statement, out);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                transaction.rollback();
+            }
+        } finally {
+            session.close();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        // the session is only opened while writing
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.n52.sensorweb.awi.data.FeatureCache;
+import org.n52.sensorweb.awi.data.SensorCache;
+import org.n52.sensorweb.awi.data.SeriesStatistics;
+import org.n52.sensorweb.awi.data.SeriesStatisticsCache;
+import org.n52.sensorweb.awi.data.entities.Sensor;
+import org.n52.shetland.ogc.filter.TemporalFilter;
+import org.n52.shetland.ogc.gml.time.Time;
+import org.n52.shetland.ogc.gml.time.TimeInstant;
+import org.n52.shetland.ogc.gml.time.TimePeriod;
+
+/**
+ * Estimates the number of rows a {@code GetObservation} request will return without accessing the database. The
+ * estimation uses the {@link SeriesStatistics} of every sensor matching the filter and assumes the values of a series
+ * are evenly distributed over its time extent. Spatial filters and the time extents of expeditions are ignored, so
+ * the estimation is an upper bound for these filters.
+ *
+ * @author Christian Autermann
+ */
+public class CostEstimator {
+    private final SensorCache sensorCache;
+    private final SeriesStatisticsCache statisticsCache;
+    private final SensorMatcher sensorMatcher;
+
+    /**
+     * Create a new {@code CostEstimator}.
+     *
+     * @param sensorCache     the sensor cache
+     * @param statisticsCache the series statistics cache
+     * @param featureCache    the feature cache
+     */
+    public CostEstimator(SensorCache sensorCache, SeriesStatisticsCache statisticsCache, FeatureCache featureCache) {
+        this.sensorCache = Objects.requireNonNull(sensorCache);
+        this.statisticsCache = Objects.requireNonNull(statisticsCache);
+        this.sensorMatcher = new SensorMatcher(featureCache);
+    }
+
+    /**
+     * Estimate the number of rows matching the filter.
+     *
+     * @param filter the filter
+     *
+     * @return the estimated number of rows or an empty {@code Optional} if the statistics are not yet loaded
+     */
+    public OptionalLong estimate(ObservationFilter filter) {
+        return estimate(filter, Optional.empty(), Long.MAX_VALUE);
+    }
+
+    /**
+     * Estimate the number of rows matching the filter if the values are aggregated and at most {@code limit} rows are
+     * returned per series.
+     *
+     * @param filter      the filter
+     * @param aggregation the aggregation of the values
+     * @param limit       the maximum number of rows per series
+     *
+     * @return the estimated number of rows or an empty {@code Optional} if the statistics are not yet loaded
+     */
+    public OptionalLong estimate(ObservationFilter filter, Optional<Aggregation> aggregation, long limit) {
+        if (!this.statisticsCache.isLoaded()) {
+            // a missing statistic would be mistaken for a series without values
+            return OptionalLong.empty();
+        }
+        Predicate<Sensor> predicate = this.sensorMatcher.getPredicate(filter);
+        List<long[]> intervals = getIntervals(filter.getTemporalFilters());
+        return OptionalLong.of(this.sensorCache.getSensors().stream()
+                .filter(predicate)
+                .map(Sensor::getId)
+                .map(this.statisticsCache::getStatistics)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .mapToLong(statistics -> Math.min(limit, estimate(statistics, intervals, aggregation)))
+                .sum());
+    }
+
+    /**
+     * Estimate the number of rows of a series in the supplied intervals.
+     *
+     * @param statistics  the series statistics
+     * @param intervals   the intervals
+     * @param aggregation the aggregation of the values
+     *
+     * @return the estimated number of rows
+     */
+    private static long estimate(SeriesStatistics statistics, List<long[]> intervals,
+                                 Optional<Aggregation> aggregation) {
+        // the temporal filters are combined by a disjunction
+        long sum = intervals.stream().mapToLong(i -> {
+            long values = statistics.estimate(i[0], i[1]);
+            // an aggregation returns at most a single row per bucket
+            return aggregation.map(a -> Math.min(values, getBuckets(statistics, i[0], i[1], a.getInterval())))
+                    .orElse(values);
+        }).sum();
+        return Math.min(sum, statistics.getCount());
+    }
+
+    /**
+     * Get the number of aggregation buckets of a series in the supplied interval. The buckets are aligned to the
+     * epoch.
+     *
+     * @param statistics the series statistics
+     * @param from       the begin of the interval (inclusive)
+     * @param to         the end of the interval (inclusive)
+     * @param interval   the duration of a bucket
+     *
+     * @return the number of buckets
+     */
+    private static long getBuckets(SeriesStatistics statistics, long from, long to, long interval) {
+        long lower = Math.max(from, statistics.getBegin());
+        long upper = Math.min(to, statistics.getEnd());
+        if (lower > upper) {
+            return 0;
+        }
+        return Math.floorDiv(upper, interval) - Math.floorDiv(lower, interval) + 1;
+    }
+
+    /**
+     * Get the intervals covered by the temporal filters. If there are no temporal filters, a single unbounded
+     * interval is returned.
+     *
+     * @param filters the temporal filters
+     *
+     * @return the intervals as {@code [begin, end]} arrays
+     */
+    private static List<long[]> getIntervals(Set<TemporalFilter> filters) {
+        List<long[]> intervals = new ArrayList<>(Math.max(1, filters.size()));
+        for (TemporalFilter filter : filters) {
+            intervals.add(getInterval(filter));
+        }
+        if (intervals.isEmpty()) {
+            intervals.add(new long[] { Long.MIN_VALUE, Long.MAX_VALUE });
+        }
+        return intervals;
+    }
+
+    /**
+     * Get the interval covered by the temporal filter. Indeterminate times are treated as unbounded.
+     *
+     * @param filter the temporal filter
+     *
+     * @return the interval as {@code [begin, end]} array
+     */
+    private static long[] getInterval(TemporalFilter filter) {
+        long begin = Long.MIN_VALUE;
+        long end = Long.MAX_VALUE;
+        Time time = filter.getTime();
+        if (time instanceof TimeInstant && ((TimeInstant) time).getValue() != null) {
+            begin = end = ((TimeInstant) time).getValue().getMillis();
+        } else if (time instanceof TimePeriod) {
+            TimePeriod period = (TimePeriod) time;
+            if (period.getStart() != null) {
+                begin = period.getStart().getMillis();
+            }
+            if (period.getEnd() != null) {
+                end = period.getEnd().getMillis();
+            }
+        }
+        switch (filter.getOperator()) {
+            case TM_Before:
+                return new long[] { Long.MIN_VALUE, begin };
+            case TM_After:
+                return new long[] { end, Long.MAX_VALUE };
+            default:
+                return new long[] { begin, end };
+        }
+    }
+
+}
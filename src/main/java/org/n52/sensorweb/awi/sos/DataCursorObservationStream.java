@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+import org.hibernate.HibernateException;
+
+import org.n52.sensorweb.awi.data.DataCursor;
+import org.n52.sensorweb.awi.data.DataPoint;
+import org.n52.shetland.ogc.om.AbstractObservationStream;
+import org.n52.shetland.ogc.om.OmObservation;
+import org.n52.shetland.ogc.ows.exception.NoApplicableCodeException;
+import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
+
+/**
+ * {@code ObservationStream} that lazily creates an observation for every data point of a {@link DataCursor}.
+ *
+ * @author Christian Autermann
+ */
+public class DataCursorObservationStream extends AbstractObservationStream {
+    private final DataCursor cursor;
+    private final Function<DataPoint, OmObservation> mapper;
+
+    /**
+     * Create a new {@code DataCursorObservationStream}.
+     *
+     * @param cursor the cursor
+     * @param mapper the function to create an observation from a data point
+     */
+    public DataCursorObservationStream(DataCursor cursor, Function<DataPoint, OmObservation> mapper) {
+        this.cursor = Objects.requireNonNull(cursor);
+        this.mapper = Objects.requireNonNull(mapper);
+    }
+
+    /**
+     * Get the cursor of this stream.
+     *
+     * @return the cursor
+     */
+    public DataCursor getCursor() {
+        return this.cursor;
+    }
+
+    @Override
+    protected OmObservation computeNext() throws OwsExceptionReport {
+        try {
+            if (this.cursor.hasNext()) {
+                return this.mapper.apply(this.cursor.next());
+            }
+        } catch (HibernateException e) {
+            close();
+            throw new NoApplicableCodeException().causedBy(e);
+        }
+        close();
+        return endOfData();
+    }
+
+    @Override
+    public void close() {
+        this.cursor.close();
+    }
+
+}
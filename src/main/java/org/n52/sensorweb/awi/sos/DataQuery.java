@@ -0,0 +1,274 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import static java.util.stream.Collectors.joining;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.n52.shetland.ogc.filter.SpatialFilter;
+import org.n52.shetland.ogc.filter.TemporalFilter;
+
+/**
+ * The parameters of a query for data points: the filters of the request and how the result should be retrieved.
+ *
+ * @author Christian Autermann
+ */
+public final class DataQuery {
+    private final ObservationFilter filter;
+    private final Optional<ContinuationToken> token;
+    private final Optional<Aggregation> aggregation;
+    private final Optional<SeriesLimit> limit;
+    private final Set<Integer> sensors;
+    private final boolean paged;
+
+    /**
+     * Create a new {@code DataQuery}.
+     *
+     * @param filter      the filters
+     * @param token       the position after which the data should start
+     * @param aggregation the temporal aggregation
+     * @param limit       the limit of values per series
+     * @param sensors     the ids of the sensors to restrict the query to
+     * @param paged       if the result should be limited to a single page
+     */
+    private DataQuery(ObservationFilter filter, Optional<ContinuationToken> token,
+                      Optional<Aggregation> aggregation, Optional<SeriesLimit> limit,
+                      Set<Integer> sensors, boolean paged) {
+        this.filter = Objects.requireNonNull(filter);
+        this.token = Objects.requireNonNull(token);
+        this.aggregation = Objects.requireNonNull(aggregation);
+        this.limit = Objects.requireNonNull(limit);
+        this.sensors = Objects.requireNonNull(sensors);
+        this.paged = paged;
+    }
+
+    /**
+     * Get the filters.
+     *
+     * @return the filters
+     */
+    public ObservationFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * Get the position after which the data should start.
+     *
+     * @return the continuation token
+     */
+    public Optional<ContinuationToken> getToken() {
+        return token;
+    }
+
+    /**
+     * Get the temporal aggregation of the values.
+     *
+     * @return the aggregation
+     */
+    public Optional<Aggregation> getAggregation() {
+        return aggregation;
+    }
+
+    /**
+     * Get the limit of values per series.
+     *
+     * @return the limit
+     */
+    public Optional<SeriesLimit> getLimit() {
+        return limit;
+    }
+
+    /**
+     * Get the ids of the sensors the query is restricted to. The set iterates in the order the sensors were supplied.
+     *
+     * @return the sensor ids or an empty set
+     */
+    public Set<Integer> getSensors() {
+        return Collections.unmodifiableSet(sensors);
+    }
+
+    /**
+     * Checks if the result should be limited to a single page.
+     *
+     * @return if the result is paged
+     */
+    public boolean isPaged() {
+        return paged;
+    }
+
+    /**
+     * Create a copy of this query that is restricted to the specified sensors.
+     *
+     * @param sensors the sensor ids in the order of the result
+     *
+     * @return the query
+     */
+    public DataQuery withSensors(Set<Integer> sensors) {
+        return new DataQuery(filter, token, aggregation, limit, new LinkedHashSet<>(sensors), paged);
+    }
+
+    /**
+     * Create a canonical representation of this query. Queries selecting the same data points have the same
+     * representation, independent of the order of the filter values.
+     *
+     * @return the representation
+     */
+    public String toCanonicalString() {
+        return String.join("\n",
+                           canonicalize(filter.getProcedures(), Function.identity()),
+                           canonicalize(filter.getOfferings(), Function.identity()),
+                           canonicalize(filter.getFeatures(), Function.identity()),
+                           canonicalize(filter.getProperties(), Function.identity()),
+                           canonicalize(filter.getTemporalFilters(), DataQuery::canonicalize),
+                           canonicalize(filter.getSpatialFilters(), DataQuery::canonicalize),
+                           token.map(ContinuationToken::encode).orElse(""),
+                           aggregation.map(Object::toString).orElse(""),
+                           limit.map(Object::toString).orElse(""),
+                           sensors.stream().map(String::valueOf).collect(joining(",")),
+                           String.valueOf(paged));
+    }
+
+    /**
+     * Create a canonical representation of a set of values that does not depend on their order.
+     *
+     * @param <T>      the type of the values
+     * @param values   the values
+     * @param function the function creating the representation of a single value
+     *
+     * @return the representation
+     */
+    private static <T> String canonicalize(Collection<T> values, Function<? super T, String> function) {
+        return values.stream().map(function).sorted().collect(joining("\t"));
+    }
+
+    /**
+     * Create a canonical representation of a temporal filter.
+     *
+     * @param filter the filter
+     *
+     * @return the representation
+     */
+    private static String canonicalize(TemporalFilter filter) {
+        return String.format("%s %s %s", filter.getOperator(), filter.getValueReference(), filter.getTime());
+    }
+
+    /**
+     * Create a canonical representation of a spatial filter.
+     *
+     * @param filter the filter
+     *
+     * @return the representation
+     */
+    private static String canonicalize(SpatialFilter filter) {
+        return String.format("%s %s SRID=%d;%s", filter.getOperator(), filter.getValueReference(),
+                             filter.getGeometry().getSRID(), filter.getGeometry().toGeometry().toText());
+    }
+
+    /**
+     * Create a new {@link Builder}.
+     *
+     * @param filter the filters
+     *
+     * @return the builder
+     */
+    public static Builder builder(ObservationFilter filter) {
+        return new Builder(filter);
+    }
+
+    /**
+     * Builder for {@code DataQuery}.
+     */
+    public static final class Builder {
+        private final ObservationFilter filter;
+        private Optional<ContinuationToken> token = Optional.empty();
+        private Optional<Aggregation> aggregation = Optional.empty();
+        private Optional<SeriesLimit> limit = Optional.empty();
+        private boolean paged;
+
+        /**
+         * Creates a new {@code Builder}.
+         *
+         * @param filter the filters
+         */
+        private Builder(ObservationFilter filter) {
+            this.filter = Objects.requireNonNull(filter);
+        }
+
+        /**
+         * Sets the continuation token.
+         *
+         * @param token the token
+         *
+         * @return {@code this}
+         */
+        public Builder setToken(Optional<ContinuationToken> token) {
+            this.token = Objects.requireNonNull(token);
+            return this;
+        }
+
+        /**
+         * Sets the temporal aggregation.
+         *
+         * @param aggregation the aggregation
+         *
+         * @return {@code this}
+         */
+        public Builder setAggregation(Optional<Aggregation> aggregation) {
+            this.aggregation = Objects.requireNonNull(aggregation);
+            return this;
+        }
+
+        /**
+         * Sets the limit of values per series.
+         *
+         * @param limit the limit
+         *
+         * @return {@code this}
+         */
+        public Builder setLimit(Optional<SeriesLimit> limit) {
+            this.limit = Objects.requireNonNull(limit);
+            return this;
+        }
+
+        /**
+         * Sets if the result should be limited to a single page.
+         *
+         * @param paged if the result is paged
+         *
+         * @return {@code this}
+         */
+        public Builder setPaged(boolean paged) {
+            this.paged = paged;
+            return this;
+        }
+
+        /**
+         * Create the query.
+         *
+         * @return the query
+         */
+        public DataQuery build() {
+            return new DataQuery(filter, token, aggregation, limit, Collections.emptySet(), paged);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import org.hibernate.HibernateException;
+
+import org.n52.sensorweb.awi.data.DataCursor;
+import org.n52.sensorweb.awi.data.DataPoint;
+import org.n52.shetland.ogc.om.AbstractObservationStream;
+import org.n52.shetland.ogc.om.OmObservation;
+import org.n52.shetland.ogc.ows.exception.NoApplicableCodeException;
+import org.n52.shetland.ogc.ows.exception.OwsExceptionReport;
+
+/**
+ * {@code ObservationStream} that merges consecutive data points of the same sensor and feature of interest into a
+ * single observation with a SWE Common {@code DataArray} result. The cursor has to be ordered by sensor and time.
+ *
+ * At most {@code maxValues} data points are merged into a single observation, so the memory consumption is bounded
+ * independent of the length of a series.
+ *
+ * @author Christian Autermann
+ */
+public class MergingObservationStream extends AbstractObservationStream {
+    private final DataCursor cursor;
+    private final ObservationCreator creator;
+    private final int maxValues;
+    private DataPoint pending;
+    private String pendingFeature;
+
+    /**
+     * Create a new {@code MergingObservationStream}.
+     *
+     * @param cursor    the cursor
+     * @param creator   the observation creator
+     * @param maxValues the maximum number of values per observation
+     */
+    public MergingObservationStream(DataCursor cursor, ObservationCreator creator, int maxValues) {
+        if (maxValues <= 0) {
+            throw new IllegalArgumentException("maxValues has to be positive");
+        }
+        this.cursor = Objects.requireNonNull(cursor);
+        this.creator = Objects.requireNonNull(creator);
+        this.maxValues = maxValues;
+    }
+
+    /**
+     * Get the cursor of this stream.
+     *
+     * @return the cursor
+     */
+    public DataCursor getCursor() {
+        return this.cursor;
+    }
+
+    @Override
+    protected OmObservation computeNext() throws OwsExceptionReport {
+        try {
+            if (this.pending == null && !fetch()) {
+                close();
+                return endOfData();
+            }
+            DataPoint first = this.pending;
+            String feature = this.pendingFeature;
+            List<DataPoint> points = new ArrayList<>();
+            points.add(first);
+            this.pending = null;
+            while (points.size() < this.maxValues && fetch()) {
+                if (this.pending.getSensor() != first.getSensor() || !this.pendingFeature.equals(feature)) {
+                    break;
+                }
+                points.add(this.pending);
+                this.pending = null;
+            }
+            return this.creator.create(points, feature);
+        } catch (HibernateException e) {
+            close();
+            throw new NoApplicableCodeException().causedBy(e);
+        }
+    }
+
+    /**
+     * Read the next data point from the cursor into the lookahead.
+     *
+     * @return if a data point is pending
+     */
+    private boolean fetch() {
+        if (this.pending == null && this.cursor.hasNext()) {
+            this.pending = this.cursor.next();
+            this.pendingFeature = this.creator.getFeature(this.pending);
+        }
+        return this.pending != null;
+    }
+
+    @Override
+    public void close() {
+        this.cursor.close();
+    }
+
+}
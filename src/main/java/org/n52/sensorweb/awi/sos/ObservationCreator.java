@@ -0,0 +1,437 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import static java.util.stream.Collectors.toList;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.PrecisionModel;
+
+import org.n52.sensorweb.awi.data.DataPoint;
+import org.n52.sensorweb.awi.data.FeatureCache;
+import org.n52.sensorweb.awi.data.SensorCache;
+import org.n52.sensorweb.awi.data.entities.Device;
+import org.n52.sensorweb.awi.data.entities.Platform;
+import org.n52.sensorweb.awi.data.entities.Sensor;
+import org.n52.shetland.ogc.gml.CodeType;
+import org.n52.shetland.ogc.gml.CodeWithAuthority;
+import org.n52.shetland.ogc.gml.ReferenceType;
+import org.n52.shetland.ogc.gml.time.Time;
+import org.n52.shetland.ogc.gml.time.TimeInstant;
+import org.n52.shetland.ogc.gml.time.TimePeriod;
+import org.n52.shetland.ogc.om.MultiObservationValues;
+import org.n52.shetland.ogc.om.NamedValue;
+import org.n52.shetland.ogc.om.OmConstants;
+import org.n52.shetland.ogc.om.OmObservableProperty;
+import org.n52.shetland.ogc.om.OmObservation;
+import org.n52.shetland.ogc.om.OmObservationConstellation;
+import org.n52.shetland.ogc.om.SingleObservationValue;
+import org.n52.shetland.ogc.om.features.samplingFeatures.SamplingFeature;
+import org.n52.shetland.ogc.om.values.GeometryValue;
+import org.n52.shetland.ogc.om.values.QuantityValue;
+import org.n52.shetland.ogc.om.values.SweDataArrayValue;
+import org.n52.shetland.ogc.sos.SosProcedureDescriptionUnknownType;
+import org.n52.shetland.ogc.swe.SweConstants;
+import org.n52.shetland.ogc.swe.SweDataArray;
+import org.n52.shetland.ogc.swe.SweDataRecord;
+import org.n52.shetland.ogc.swe.SweField;
+import org.n52.shetland.ogc.swe.encoding.SweTextEncoding;
+import org.n52.shetland.ogc.swe.simpleType.SweQuantity;
+import org.n52.shetland.ogc.swe.simpleType.SweTime;
+import org.n52.shetland.util.DateTimeHelper;
+
+/**
+ * Creates O&amp;M observations for {@link DataPoint data points}.
+ *
+ * Instances are meant to be used for a single response: observation constellations are interned per sensor and
+ * feature, so the procedure, observable property and feature objects are shared by all observations of the same
+ * series. Data points can either be converted to single measurements or merged into observations with a SWE Common
+ * {@code DataArray} result. Instances are not thread safe.
+ *
+ * @author Christian Autermann
+ */
+public class ObservationCreator implements Function<DataPoint, OmObservation> {
+    private static final int EPSG_4326 = 4326;
+    private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory(new PrecisionModel(), EPSG_4326);
+    private static final String BLOCK_SEPARATOR = "@@";
+    private static final String TOKEN_SEPARATOR = ",";
+    private static final String DECIMAL_SEPARATOR = ".";
+    private static final String LONGITUDE = "longitude";
+    private static final String LATITUDE = "latitude";
+    private static final String DEGREE = "deg";
+    private static final String COUNT_UNIT = "1";
+    private final SensorCache sensorCache;
+    private final FeatureCache featureCache;
+    private final Optional<Aggregation> aggregation;
+    private final Map<Integer, Series> series = new HashMap<>();
+
+    /**
+     * Create a new {@code ObservationCreator}.
+     *
+     * @param sensorCache  the sensor cache
+     * @param featureCache the feature cache
+     */
+    public ObservationCreator(SensorCache sensorCache, FeatureCache featureCache) {
+        this(sensorCache, featureCache, Optional.empty());
+    }
+
+    /**
+     * Create a new {@code ObservationCreator} for aggregated data points. The time of every data point is the begin
+     * of its time bucket.
+     *
+     * @param sensorCache  the sensor cache
+     * @param featureCache the feature cache
+     * @param aggregation  the aggregation of the data points
+     */
+    public ObservationCreator(SensorCache sensorCache, FeatureCache featureCache,
+                              Optional<Aggregation> aggregation) {
+        this.sensorCache = Objects.requireNonNull(sensorCache);
+        this.featureCache = Objects.requireNonNull(featureCache);
+        this.aggregation = Objects.requireNonNull(aggregation);
+    }
+
+    @Override
+    public OmObservation apply(DataPoint data) {
+        return create(data);
+    }
+
+    /**
+     * Get the feature of interest of the data point.
+     *
+     * @param data the data point
+     *
+     * @return the feature identifier
+     */
+    public String getFeature(DataPoint data) {
+        return getFeature(getSeries(data.getSensor()), new DateTime(data.getTime()));
+    }
+
+    /**
+     * Create a O&amp;M Observation for the data point.
+     *
+     * @param data the data point
+     *
+     * @return the observation
+     */
+    public OmObservation create(DataPoint data) {
+        Series s = getSeries(data.getSensor());
+        DateTime dateTime = new DateTime(data.getTime());
+        TimeInstant resultTime = new TimeInstant(getEnd(data));
+        Time phenomenonTime = this.aggregation.isPresent()
+                                      ? new TimePeriod(dateTime, resultTime.getValue())
+                                      : resultTime;
+
+        QuantityValue value = new QuantityValue(data.getValue(), s.getUnit());
+        SingleObservationValue<BigDecimal> observationValue = new SingleObservationValue<>(phenomenonTime, value);
+
+        OmObservation observation = new OmObservation();
+        observation.setResultTime(resultTime);
+        observation.setObservationConstellation(s.getConstellation(getFeature(s, dateTime)));
+        observation.setValue(observationValue);
+
+        if (s.isMobile() && data.hasLocation()) {
+            observation.addParameter(createSamplingGeometry(data));
+        }
+
+        return observation;
+    }
+
+    /**
+     * Create a single O&amp;M observation with a SWE Common {@code DataArray} result for the supplied data points. All
+     * data points have to belong to the same sensor and feature of interest and have to be ordered by time.
+     *
+     * @param data    the data points
+     * @param feature the feature of interest of the data points
+     *
+     * @return the observation
+     */
+    public OmObservation create(List<DataPoint> data, String feature) {
+        if (data.isEmpty()) {
+            throw new IllegalArgumentException("no data points");
+        }
+        Series s = getSeries(data.get(0).getSensor());
+
+        SweDataArray dataArray = new SweDataArray();
+        dataArray.setElementType(s.getElementType());
+        dataArray.setEncoding(createEncoding());
+        dataArray.setValues(data.stream().map(d -> createBlock(s, d)).collect(toList()));
+
+        TimeInstant begin = new TimeInstant(new DateTime(data.get(0).getTime()));
+        TimeInstant end = new TimeInstant(getEnd(data.get(data.size() - 1)));
+
+        MultiObservationValues<SweDataArray> observationValue = new MultiObservationValues<>();
+        observationValue.setPhenomenonTime(new TimePeriod(begin, end));
+        observationValue.setValue(new SweDataArrayValue(dataArray));
+
+        OmObservation observation = new OmObservation();
+        observation.setResultTime(end);
+        observation.setObservationConstellation(s.getArrayConstellation(feature));
+        observation.setValue(observationValue);
+        return observation;
+    }
+
+    /**
+     * Get the end of the time covered by the data point. This is the end of the time bucket for aggregated data points.
+     *
+     * @param data the data point
+     *
+     * @return the end time
+     */
+    private DateTime getEnd(DataPoint data) {
+        return new DateTime(data.getTime() + this.aggregation.map(Aggregation::getInterval).orElse(0L));
+    }
+
+    /**
+     * Create the block of a {@code DataArray} for the data point.
+     *
+     * @param s    the series
+     * @param data the data point
+     *
+     * @return the block
+     */
+    private List<String> createBlock(Series s, DataPoint data) {
+        String time = DateTimeHelper.formatDateTime2IsoString(new DateTime(data.getTime(), DateTimeZone.UTC));
+        String value = Double.toString(data.getValue());
+        if (s.isMobile()) {
+            return Arrays.asList(time, value,
+                                 Double.toString(data.getLongitude()),
+                                 Double.toString(data.getLatitude()));
+        } else {
+            return Arrays.asList(time, value);
+        }
+    }
+
+    /**
+     * Create the text encoding for a {@code DataArray}.
+     *
+     * @return the encoding
+     */
+    private static SweTextEncoding createEncoding() {
+        SweTextEncoding encoding = new SweTextEncoding();
+        encoding.setBlockSeparator(BLOCK_SEPARATOR);
+        encoding.setTokenSeparator(TOKEN_SEPARATOR);
+        encoding.setDecimalSeparator(DECIMAL_SEPARATOR);
+        return encoding;
+    }
+
+    /**
+     * Get the feature of interest of the series at the specified time.
+     *
+     * @param s    the series
+     * @param time the time
+     *
+     * @return the feature identifier
+     */
+    private String getFeature(Series s, DateTime time) {
+        return this.featureCache.getFeatureId(s.getPlatform(), time);
+    }
+
+    /**
+     * Create the sampling geometry parameter for the position of the data point.
+     *
+     * @param data the data point
+     *
+     * @return the parameter
+     */
+    private NamedValue<?> createSamplingGeometry(DataPoint data) {
+        Point point = GEOMETRY_FACTORY.createPoint(new Coordinate(data.getLongitude(), data.getLatitude()));
+        return new NamedValue<>(new ReferenceType(OmConstants.PARAM_NAME_SAMPLING_GEOMETRY),
+                                new GeometryValue(point));
+    }
+
+    /**
+     * Get the series of the specified sensor.
+     *
+     * @param id the sensor id
+     *
+     * @return the series
+     */
+    private Series getSeries(int id) {
+        Series s = this.series.get(id);
+        if (s == null) {
+            Sensor sensor = this.sensorCache.getSensor(id)
+                    .orElseThrow(() -> new IllegalStateException("Unknown sensor " + id));
+            boolean count = this.aggregation.map(Aggregation::getFunction)
+                    .filter(f -> f == Aggregation.Function.COUNT).isPresent();
+            s = new Series(sensor, count ? COUNT_UNIT : sensor.getUnit());
+            this.series.put(id, s);
+        }
+        return s;
+    }
+
+    /**
+     * The interned objects of a single sensor.
+     */
+    private static class Series {
+        private final String platform;
+        private final String unit;
+        private final boolean mobile;
+        private final SosProcedureDescriptionUnknownType procedure;
+        private final OmObservableProperty observableProperty;
+        private final Map<String, OmObservationConstellation> constellations = new HashMap<>(2);
+        private final Map<String, OmObservationConstellation> arrayConstellations = new HashMap<>(2);
+        private SweDataRecord elementType;
+
+        /**
+         * Create a new {@code Series}.
+         *
+         * @param sensor the sensor
+         * @param unit   the unit of the values
+         */
+        Series(Sensor sensor, String unit) {
+            Device device = sensor.getDevice();
+            Platform p = device.getPlatform();
+            this.platform = p.getCode();
+            this.unit = unit;
+            this.mobile = p.isMobile();
+
+            this.procedure = new SosProcedureDescriptionUnknownType(p.getCode() + ":" + device.getCode());
+            this.procedure.setName(new CodeType(p.getName() + " - " + device.getName()));
+
+            this.observableProperty = new OmObservableProperty(sensor.getCode());
+            this.observableProperty.setName(new CodeType(sensor.getName()));
+            this.observableProperty.setUnit(unit);
+            this.observableProperty.setValueType(SweConstants.VT_QUANTITY);
+        }
+
+        /**
+         * Get the code of the platform.
+         *
+         * @return the platform code
+         */
+        String getPlatform() {
+            return platform;
+        }
+
+        /**
+         * Get the unit of the sensor.
+         *
+         * @return the unit
+         */
+        String getUnit() {
+            return unit;
+        }
+
+        /**
+         * Checks if the platform is mobile.
+         *
+         * @return if the platform is mobile
+         */
+        boolean isMobile() {
+            return mobile;
+        }
+
+        /**
+         * Get the observation constellation of this series for the specified feature.
+         *
+         * @param feature the feature identifier
+         *
+         * @return the observation constellation
+         */
+        OmObservationConstellation getConstellation(String feature) {
+            return this.constellations.computeIfAbsent(feature, f -> createConstellation(
+                    f, OmConstants.OBS_TYPE_MEASUREMENT));
+        }
+
+        /**
+         * Get the {@code SWEArrayObservation} constellation of this series for the specified feature.
+         *
+         * @param feature the feature identifier
+         *
+         * @return the observation constellation
+         */
+        OmObservationConstellation getArrayConstellation(String feature) {
+            return this.arrayConstellations.computeIfAbsent(feature, f -> createConstellation(
+                    f, OmConstants.OBS_TYPE_SWE_ARRAY_OBSERVATION));
+        }
+
+        /**
+         * Get the element type of {@code DataArray} results of this series. Mobile series additionally contain the
+         * position of every value.
+         *
+         * @return the element type
+         */
+        SweDataRecord getElementType() {
+            if (this.elementType == null) {
+                SweTime time = new SweTime();
+                time.setDefinition(OmConstants.PHENOMENON_TIME);
+                time.setUom(OmConstants.PHEN_UOM_ISO8601);
+
+                SweQuantity value = new SweQuantity();
+                value.setDefinition(this.observableProperty.getIdentifier());
+                value.setUom(this.unit);
+
+                SweDataRecord record = new SweDataRecord();
+                record.addField(new SweField(OmConstants.PHENOMENON_TIME_NAME, time));
+                record.addField(new SweField(this.observableProperty.getIdentifier(), value));
+                if (this.mobile) {
+                    record.addField(new SweField(LONGITUDE, createCoordinate(LONGITUDE)));
+                    record.addField(new SweField(LATITUDE, createCoordinate(LATITUDE)));
+                }
+                this.elementType = record;
+            }
+            return this.elementType;
+        }
+
+        /**
+         * Create a quantity for a WGS84 coordinate axis.
+         *
+         * @param axis the axis name
+         *
+         * @return the quantity
+         */
+        private static SweQuantity createCoordinate(String axis) {
+            SweQuantity quantity = new SweQuantity();
+            quantity.setAxisID(axis);
+            quantity.setDefinition(axis);
+            quantity.setUom(DEGREE);
+            return quantity;
+        }
+
+        /**
+         * Create a new observation constellation for the specified feature.
+         *
+         * @param feature         the feature identifier
+         * @param observationType the observation type
+         *
+         * @return the observation constellation
+         */
+        private OmObservationConstellation createConstellation(String feature, String observationType) {
+            SamplingFeature samplingFeature = new SamplingFeature(new CodeWithAuthority(feature));
+            samplingFeature.setName(new CodeType(feature));
+
+            OmObservationConstellation constellation = new OmObservationConstellation();
+            constellation.setObservationType(observationType);
+            constellation.setProcedure(this.procedure);
+            constellation.setFeatureOfInterest(samplingFeature);
+            constellation.setObservableProperty(this.observableProperty);
+            return constellation;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import static org.n52.sensorweb.awi.sos.TabularColumns.FEATURE;
+import static org.n52.sensorweb.awi.sos.TabularColumns.LATITUDE;
+import static org.n52.sensorweb.awi.sos.TabularColumns.LONGITUDE;
+import static org.n52.sensorweb.awi.sos.TabularColumns.OBSERVED_PROPERTY;
+import static org.n52.sensorweb.awi.sos.TabularColumns.PROCEDURE;
+import static org.n52.sensorweb.awi.sos.TabularColumns.TIME;
+import static org.n52.sensorweb.awi.sos.TabularColumns.UNIT;
+import static org.n52.sensorweb.awi.sos.TabularColumns.VALUE;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.UnaryOperator;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Types;
+
+import org.n52.sensorweb.awi.data.DataCursor;
+import org.n52.sensorweb.awi.data.DataPoint;
+import org.n52.sensorweb.awi.data.FeatureCache;
+import org.n52.sensorweb.awi.data.SensorCache;
+
+/**
+ * Writes the {@link DataPoint data points} of a {@link DataCursor} as a Parquet file. Row groups of up to
+ * {@value #ROW_GROUP_SIZE} bytes are written using the version 2 encodings: the repetitive string columns are
+ * dictionary and run length encoded, time stamps fall back to delta encoding.
+ *
+ * The cursor is consumed and closed by {@link #write(OutputStream)}, instances can only be written once.
+ *
+ * @author Christian Autermann
+ */
+public class ParquetObservationWriter implements TabularWriter {
+    private static final int ROW_GROUP_SIZE = 32 * 1024 * 1024;
+    private static final MessageType SCHEMA = Types.buildMessage()
+            .required(PrimitiveTypeName.INT64)
+            .as(LogicalTypeAnnotation.timestampType(true, LogicalTypeAnnotation.TimeUnit.MILLIS)).named(TIME)
+            .required(PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named(PROCEDURE)
+            .required(PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named(OBSERVED_PROPERTY)
+            .required(PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named(FEATURE)
+            .required(PrimitiveTypeName.DOUBLE).named(VALUE)
+            .optional(PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named(UNIT)
+            .optional(PrimitiveTypeName.DOUBLE).named(LONGITUDE)
+            .optional(PrimitiveTypeName.DOUBLE).named(LATITUDE)
+            .named("observation");
+    private final DataCursor cursor;
+    private final TabularColumns columns;
+    private final Optional<String> continuationToken;
+
+    /**
+     * Create a new {@code ParquetObservationWriter}.
+     *
+     * @param cursor            the cursor of the data points
+     * @param sensorCache       the sensor cache
+     * @param featureCache      the feature cache
+     * @param aggregation       the aggregation of the data points
+     * @param continuationToken the token referencing the next page
+     */
+    public ParquetObservationWriter(DataCursor cursor, SensorCache sensorCache, FeatureCache featureCache,
+                                    Optional<Aggregation> aggregation, Optional<String> continuationToken) {
+        this.cursor = Objects.requireNonNull(cursor);
+        this.columns = new TabularColumns(sensorCache, featureCache, aggregation, UnaryOperator.identity());
+        this.continuationToken = Objects.requireNonNull(continuationToken);
+    }
+
+    @Override
+    public TabularFormat getFormat() {
+        return TabularFormat.PARQUET;
+    }
+
+    @Override
+    public Optional<String> getContinuationToken() {
+        return continuationToken;
+    }
+
+    @Override
+    public void write(OutputStream out) throws IOException {
+        try {
+            writeParquet(out);
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        this.cursor.close();
+    }
+
+    /**
+     * Write the data points as a Parquet file. Only the current row group is buffered in memory. If reading the data
+     * points fails, the file is aborted without a footer, so that it can not be mistaken for a complete file.
+     *
+     * @param out the output stream
+     *
+     * @throws IOException if writing fails
+     */
+    private void writeParquet(OutputStream out) throws IOException {
+        ParquetWriter<DataPoint> writer = new ParquetWriterBuilder(new StreamOutputFile(out))
+                .withWriterVersion(ParquetProperties.WriterVersion.PARQUET_2_0)
+                .withDictionaryEncoding(true)
+                .withRowGroupSize(ROW_GROUP_SIZE)
+                .build();
+        while (this.cursor.hasNext()) {
+            writer.write(this.cursor.next());
+        }
+        // flushes the last row group and writes the footer, the uncompressed buffers need no release otherwise
+        writer.close();
+    }
+
+    /**
+     * {@code WriteSupport} that writes a data point as a Parquet record.
+     */
+    private class DataPointWriteSupport extends WriteSupport<DataPoint> {
+        private final Map<String, Binary> binaries = new HashMap<>();
+        private RecordConsumer consumer;
+
+        @Override
+        public WriteContext init(Configuration configuration) {
+            return new WriteContext(SCHEMA, Collections.emptyMap());
+        }
+
+        @Override
+        public void prepareForWrite(RecordConsumer recordConsumer) {
+            this.consumer = recordConsumer;
+        }
+
+        @Override
+        public void write(DataPoint data) {
+            TabularColumns.Series s = columns.getSeries(data.getSensor());
+            this.consumer.startMessage();
+            this.consumer.startField(TIME, 0);
+            this.consumer.addLong(data.getTime());
+            this.consumer.endField(TIME, 0);
+            writeString(PROCEDURE, 1, s.getProcedure());
+            writeString(OBSERVED_PROPERTY, 2, s.getObservedProperty());
+            writeString(FEATURE, 3, columns.getFeature(s, data));
+            this.consumer.startField(VALUE, 4);
+            this.consumer.addDouble(data.getValue());
+            this.consumer.endField(VALUE, 4);
+            if (!s.getUnit().isEmpty()) {
+                writeString(UNIT, 5, s.getUnit());
+            }
+            if (s.isMobile() && data.hasLocation()) {
+                this.consumer.startField(LONGITUDE, 6);
+                this.consumer.addDouble(data.getLongitude());
+                this.consumer.endField(LONGITUDE, 6);
+                this.consumer.startField(LATITUDE, 7);
+                this.consumer.addDouble(data.getLatitude());
+                this.consumer.endField(LATITUDE, 7);
+            }
+            this.consumer.endMessage();
+        }
+
+        /**
+         * Write a string field. The binary representations of the strings are interned, as they repeat for every
+         * value of a series.
+         *
+         * @param name  the field name
+         * @param index the field index
+         * @param value the value
+         */
+        private void writeString(String name, int index, String value) {
+            this.consumer.startField(name, index);
+            this.consumer.addBinary(this.binaries.computeIfAbsent(value == null ? "" : value, Binary::fromString));
+            this.consumer.endField(name, index);
+        }
+    }
+
+    /**
+     * Builder for the {@code ParquetWriter} of data points.
+     */
+    private class ParquetWriterBuilder extends ParquetWriter.Builder<DataPoint, ParquetWriterBuilder> {
+
+        /**
+         * Create a new {@code ParquetWriterBuilder}.
+         *
+         * @param file the output file
+         */
+        ParquetWriterBuilder(OutputFile file) {
+            super(file);
+        }
+
+        @Override
+        protected ParquetWriterBuilder self() {
+            return this;
+        }
+
+        @Override
+        protected WriteSupport<DataPoint> getWriteSupport(Configuration configuration) {
+            return new DataPointWriteSupport();
+        }
+    }
+
+    /**
+     * {@code OutputFile} writing to a non-seekable output stream. Parquet writes its metadata in a footer, so the
+     * file does not have to be seekable. The stream is not closed with the file.
+     */
+    private static class StreamOutputFile implements OutputFile {
+        private final OutputStream out;
+
+        /**
+         * Create a new {@code StreamOutputFile}.
+         *
+         * @param out the output stream
+         */
+        StreamOutputFile(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public PositionOutputStream create(long blockSizeHint) {
+            return new PositionOutputStream() {
+                private long position;
+
+                @Override
+                public long getPos() {
+                    return this.position;
+                }
+
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    ++this.position;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    this.position += len;
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    out.flush();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    out.flush();
+                }
+            };
+        }
+
+        @Override
+        public PositionOutputStream createOrOverwrite(long blockSizeHint) {
+            return create(blockSizeHint);
+        }
+
+        @Override
+        public boolean supportsBlockSize() {
+            return false;
+        }
+
+        @Override
+        public long defaultBlockSize() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import static java.util.stream.Collectors.joining;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.IntStream;
+
+import org.n52.sensorweb.awi.data.FeatureCache;
+
+/**
+ * Compiles simple {@link DataQuery queries} into a small number of native SQL statements. The filters are resolved
+ * by the caller to a list of sensor ids, that is passed as a single array parameter, and at most two time bounds. As
+ * the statement text only depends on which bounds are present, the prepared statements and query plans can be reused
+ * by the statement cache of the connection pool and the database.
+ *
+ * Queries can also be compiled into {@code COPY ... TO STDOUT} statements producing the CSV rows of the
+ * {@link TabularFormat#CSV} format in the database. As {@code COPY} does not accept parameters, the sensor ids and time
+ * bounds are inlined as literals; time stamps of the database are interpreted as UTC. The metadata of the sensors is
+ * joined in the statement.
+ *
+ * @author Christian Autermann
+ */
+public class QueryCompiler {
+    private static final String SELECT = "SELECT d.sensor_id, d.date, d.mean, d.longitude, d.latitude"
+                                         + " FROM unnest(CAST(:sensors AS integer[])) WITH ORDINALITY AS s(id, ord)"
+                                         + " JOIN public.dataview d ON d.sensor_id = s.id";
+    private static final String ORDER = " ORDER BY s.ord, d.date";
+    /**
+     * Selects the CSV columns. The sensors are passed as a {@code VALUES} list of sensor id and position in the
+     * result. Procedures and platform codes are built like the properties of the entities, platforms without a
+     * position are mobile. The feature of mobile platforms is the latest expedition covering the time, like in
+     * {@link FeatureCache#getFeatureId}.
+     */
+    private static final String COPY = "COPY (SELECT"
+                                       + " to_char(d.date, 'YYYY-MM-DD\"T\"HH24:MI:SS.MS\"Z\"') AS \"time\","
+                                       + " s.procedure AS \"procedure\","
+                                       + " s.property AS \"observedProperty\","
+                                       + " COALESCE(e.expedition, s.platform) AS \"feature\","
+                                       + " d.mean AS \"value\","
+                                       + " s.unit AS \"unit\","
+                                       + " CASE WHEN s.mobile THEN d.longitude END AS \"longitude\","
+                                       + " CASE WHEN s.mobile THEN d.latitude END AS \"latitude\""
+                                       + " FROM (SELECT v.id, v.ord,"
+                                       + " pl.type || ':' || pl.code || ':' || de.code AS procedure,"
+                                       + " se.code AS property, se.unit, pl.type || ':' || pl.code AS platform,"
+                                       + " pl.platform_id, pl.longitude IS NULL OR pl.latitude IS NULL AS mobile"
+                                       + " FROM (VALUES %s) AS v(id, ord)"
+                                       + " JOIN public.sensor se ON se.sensor_id = v.id"
+                                       + " JOIN public.device de ON de.device_id = se.device_id"
+                                       + " JOIN public.platform pl ON pl.platform_id = de.platform_id) AS s"
+                                       + " JOIN public.dataview d ON d.sensor_id = s.id"
+                                       + " LEFT JOIN LATERAL (SELECT x.expedition FROM public.v_expedition x"
+                                       + " WHERE s.mobile AND x.platform_id = s.platform_id"
+                                       + " AND x.begin_date <= x.end_date"
+                                       + " AND x.begin_date <= d.date AND x.end_date >= d.date"
+                                       + " ORDER BY x.begin_date DESC LIMIT 1) AS e ON TRUE"
+                                       + "%s ORDER BY s.ord, d.date) TO STDOUT WITH (FORMAT csv, HEADER)";
+    /**
+     * A {@code VALUES} row of the {@link #COPY} statement used if no sensor is selected.
+     */
+    private static final String NO_SENSOR = "(CAST(NULL AS integer), 0)";
+    private static final DateTimeFormatter TIMESTAMP_LITERAL = DateTimeFormatter
+            .ofPattern("'TIMESTAMP '''yyyy-MM-dd HH:mm:ss.SSS''").withZone(ZoneOffset.UTC);
+    private final ConcurrentMap<String, String> statements = new ConcurrentHashMap<>();
+
+    /**
+     * Checks if the query can be compiled. Only unaggregated and unpaged queries without spatial and feature filters
+     * and with at most one supported temporal filter are compiled, everything else has to be answered by a
+     * {@code Criteria} query.
+     *
+     * @param query the query
+     *
+     * @return if the query can be compiled
+     */
+    public boolean canCompile(DataQuery query) {
+        return !query.isPaged() && canCompileCopy(query);
+    }
+
+    /**
+     * Checks if the query can be compiled into a {@code COPY} statement. The same queries as by
+     * {@link #canCompile(DataQuery)} are supported, except that paging is ignored.
+     *
+     * @param query the query
+     *
+     * @return if the query can be compiled
+     */
+    public boolean canCompileCopy(DataQuery query) {
+        ObservationFilter filter = query.getFilter();
+        return !query.getAggregation().isPresent() &&
+               !query.getToken().isPresent() &&
+               filter.getSpatialFilters().isEmpty() &&
+               filter.getFeatures().isEmpty() &&
+               filter.getTemporalFilters().size() <= 1 &&
+               (filter.getTemporalFilters().isEmpty() ||
+                TemporalFilterMatcher.of(filter.getTemporalFilters()).isPresent());
+    }
+
+    /**
+     * Compile the query.
+     *
+     * @param query   the query
+     * @param sensors the ids of the sensors selected by the query in the order of the results
+     *
+     * @return the compiled query
+     *
+     * @throws IllegalArgumentException if the query {@linkplain #canCompile(DataQuery) can not be compiled}
+     */
+    public CompiledQuery compile(DataQuery query, List<Integer> sensors) {
+        if (!canCompile(query)) {
+            throw new IllegalArgumentException("query can not be compiled");
+        }
+        Optional<TemporalFilterMatcher> matcher = TemporalFilterMatcher.of(query.getFilter().getTemporalFilters());
+
+        List<String> conditions = new ArrayList<>(2);
+        Optional<Date> begin = Optional.empty();
+        Optional<Date> end = Optional.empty();
+        if (matcher.isPresent()) {
+            TemporalFilterMatcher m = matcher.get();
+            if (m.getBegin() != Long.MIN_VALUE) {
+                conditions.add(m.isBeginInclusive() ? "d.date >= :begin" : "d.date > :begin");
+                begin = Optional.of(new Date(m.getBegin()));
+            }
+            if (m.getEnd() != Long.MAX_VALUE) {
+                conditions.add(m.isEndInclusive() ? "d.date <= :end" : "d.date < :end");
+                end = Optional.of(new Date(m.getEnd()));
+            }
+        }
+        String shape = String.join(" AND ", conditions);
+        String sql = this.statements.computeIfAbsent(shape, x -> x.isEmpty()
+                                                                  ? SELECT + ORDER
+                                                                  : SELECT + " WHERE " + x + ORDER);
+
+        return new CompiledQuery(sql, sensors, begin, end);
+    }
+
+    /**
+     * Compile the query into a {@code COPY} statement writing CSV rows. If no sensor is selected, the statement only
+     * writes the header.
+     *
+     * @param query   the query
+     * @param sensors the ids of the sensors selected by the query in the order of the results
+     *
+     * @return the statement
+     *
+     * @throws IllegalArgumentException if the query {@linkplain #canCompileCopy(DataQuery) can not be compiled}
+     */
+    public String compileCopy(DataQuery query, List<Integer> sensors) {
+        if (!canCompileCopy(query)) {
+            throw new IllegalArgumentException("query can not be compiled");
+        }
+        List<String> conditions = new ArrayList<>(2);
+        Optional<TemporalFilterMatcher> matcher = TemporalFilterMatcher.of(query.getFilter().getTemporalFilters());
+        if (matcher.isPresent()) {
+            TemporalFilterMatcher m = matcher.get();
+            if (m.getBegin() != Long.MIN_VALUE) {
+                conditions.add((m.isBeginInclusive() ? "d.date >= " : "d.date > ") + toLiteral(m.getBegin()));
+            }
+            if (m.getEnd() != Long.MAX_VALUE) {
+                conditions.add((m.isEndInclusive() ? "d.date <= " : "d.date < ") + toLiteral(m.getEnd()));
+            }
+        }
+
+        if (sensors.isEmpty()) {
+            return String.format(COPY, NO_SENSOR, " WHERE FALSE");
+        }
+        // the ids are integers from the database and can be safely inlined
+        String values = IntStream.range(0, sensors.size())
+                .mapToObj(i -> String.format(Locale.ROOT, "(%d, %d)", sensors.get(i), i + 1))
+                .collect(joining(", "));
+        String where = conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+        return String.format(COPY, values, where);
+    }
+
+    /**
+     * Create a SQL time stamp literal.
+     *
+     * @param time the time in milliseconds since the epoch
+     *
+     * @return the literal
+     */
+    private static String toLiteral(long time) {
+        return TIMESTAMP_LITERAL.format(Instant.ofEpochMilli(time));
+    }
+}
@@ -0,0 +1,433 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Disk based cache of tabular {@code GetObservation} responses for historical time ranges. Values older than the
+ * settled age are not changed anymore, so the encoded responses of queries that end before the settled horizon can be
+ * reused for identical queries.
+ * <p>
+ * The responses are stored in files named by a hash of the canonical form of the query and the response format and a
+ * sequence number, so concurrent identical requests never write to the file of another entry. The index of the
+ * entries is held in memory, so the files of a previous run are deleted on startup. If the total size of the entries
+ * exceeds the maximum size, the least recently used entries are evicted.
+ *
+ * @author Christian Autermann
+ */
+public class ResponseCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ResponseCache.class);
+    private static final String SUFFIX = ".response";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private final Path directory;
+    private final long maxSize;
+    private final long settledAge;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong sequence = new AtomicLong();
+    private long size;
+
+    /**
+     * Create a new {@code ResponseCache}.
+     *
+     * @param directory  the directory to store the responses in
+     * @param maxSize    the maximum total size of the responses in bytes
+     * @param settledAge the age in milliseconds after which values are not changed anymore
+     *
+     * @throws IOException if the directory can not be created or cleared
+     */
+    public ResponseCache(Path directory, long maxSize, long settledAge) throws IOException {
+        if (maxSize <= 0 || settledAge < 0) {
+            throw new IllegalArgumentException("maxSize has to be positive and settledAge may not be negative");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.maxSize = maxSize;
+        this.settledAge = settledAge;
+        // remove the responses and unfinished copies of a previous run
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory,
+                                                                    "*{" + SUFFIX + "," + TEMPORARY_SUFFIX + "}")) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Get the key of the response to a query, if the query only selects settled values.
+     *
+     * @param format the tabular format of the response
+     * @param query  the query
+     * @param bulk   if the response is a bulk extraction
+     *
+     * @return the key or an empty {@code Optional} if the response may not be cached
+     */
+    public Optional<String> getKey(TabularFormat format, DataQuery query, boolean bulk) {
+        long horizon = System.currentTimeMillis() - this.settledAge;
+        ObservationFilter filter = query.getFilter();
+        boolean settled = TemporalFilterMatcher.of(filter.getTemporalFilters())
+                .filter(matcher -> matcher.getEnd() < horizon)
+                .isPresent();
+        if (!settled) {
+            return Optional.empty();
+        }
+        String canonical = String.join("\n", format.name(), String.valueOf(bulk), query.toCanonicalString());
+        return Optional.of(Hashing.sha256().hashString(canonical, StandardCharsets.UTF_8).toString());
+    }
+
+    /**
+     * Get a writer streaming the cached response.
+     *
+     * @param key    the key of the response
+     * @param format the tabular format of the response
+     *
+     * @return the writer or an empty {@code Optional} if the response is not cached
+     */
+    public Optional<TabularWriter> get(String key, TabularFormat format) {
+        Entry entry;
+        synchronized (this) {
+            entry = this.entries.get(key);
+        }
+        if (entry == null) {
+            return Optional.empty();
+        }
+        try {
+            // an entry that is evicted while it is read stays readable through the open stream
+            InputStream in = Files.newInputStream(entry.file);
+            return Optional.of(new CachedTabularWriter(in, format, entry.continuationToken));
+        } catch (IOException e) {
+            LOG.warn("Error reading cached response {}", entry.file, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Wrap the writer of a response, so the response is stored as soon as it was written completely.
+     *
+     * @param key    the key of the response
+     * @param writer the writer of the response
+     *
+     * @return the writer storing the response
+     */
+    public TabularWriter put(String key, TabularWriter writer) {
+        return new CachingTabularWriter(key, writer);
+    }
+
+    /**
+     * Add a completely written response to the cache and evict the least recently used entries if the cache is full.
+     *
+     * @param key   the key of the response
+     * @param entry the entry
+     */
+    private void add(String key, Entry entry) {
+        Collection<Path> evicted = new ArrayList<>();
+        synchronized (this) {
+            if (this.entries.containsKey(key)) {
+                // a concurrent identical request was faster, the file of its entry is a different one
+                evicted.add(entry.file);
+            } else {
+                this.entries.put(key, entry);
+                this.size += entry.size;
+                Iterator<Entry> iter = this.entries.values().iterator();
+                while (this.size > this.maxSize && iter.hasNext()) {
+                    Entry eldest = iter.next();
+                    iter.remove();
+                    this.size -= eldest.size;
+                    evicted.add(eldest.file);
+                }
+            }
+        }
+        evicted.forEach(ResponseCache::delete);
+    }
+
+    /**
+     * Delete a file of the cache.
+     *
+     * @param file the file
+     */
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.warn("Error deleting cached response {}", file, e);
+        }
+    }
+
+    /**
+     * A cached response.
+     */
+    private static class Entry {
+        private final Path file;
+        private final long size;
+        private final Optional<String> continuationToken;
+
+        Entry(Path file, long size, Optional<String> continuationToken) {
+            this.file = file;
+            this.size = size;
+            this.continuationToken = continuationToken;
+        }
+    }
+
+    /**
+     * {@code TabularWriter} that streams a cached response.
+     */
+    private static class CachedTabularWriter implements TabularWriter {
+        private final InputStream in;
+        private final TabularFormat format;
+        private final Optional<String> continuationToken;
+
+        CachedTabularWriter(InputStream in, TabularFormat format, Optional<String> continuationToken) {
+            this.in = in;
+            this.format = format;
+            this.continuationToken = continuationToken;
+        }
+
+        @Override
+        public TabularFormat getFormat() {
+            return this.format;
+        }
+
+        @Override
+        public Optional<String> getContinuationToken() {
+            return this.continuationToken;
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            try {
+                ByteStreams.copy(this.in, out);
+                out.flush();
+            } finally {
+                close();
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                this.in.close();
+            } catch (IOException e) {
+                LOG.warn("Error closing cached response", e);
+            }
+        }
+    }
+
+    /**
+     * {@code TabularWriter} that writes the response to the client and to a file, that is added to the cache once the
+     * response was written completely.
+     */
+    private class CachingTabularWriter implements TabularWriter {
+        private final String key;
+        private final TabularWriter writer;
+
+        CachingTabularWriter(String key, TabularWriter writer) {
+            this.key = Objects.requireNonNull(key);
+            this.writer = Objects.requireNonNull(writer);
+        }
+
+        @Override
+        public TabularFormat getFormat() {
+            return this.writer.getFormat();
+        }
+
+        @Override
+        public Optional<String> getContinuationToken() {
+            return this.writer.getContinuationToken();
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            String name = this.key + '.' + sequence.incrementAndGet();
+            Path file = directory.resolve(name + TEMPORARY_SUFFIX);
+            TeeOutputStream tee = new TeeOutputStream(out, file, maxSize);
+            try {
+                this.writer.write(tee);
+            } catch (IOException | RuntimeException e) {
+                tee.abandon();
+                delete(file);
+                throw e;
+            }
+            if (!tee.finish()) {
+                delete(file);
+                return;
+            }
+            // the response was delivered, failing to cache it must not fail the request
+            Path target = directory.resolve(name + SUFFIX);
+            try {
+                Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("Error caching response in {}", target, e);
+                delete(file);
+                return;
+            }
+            try {
+                LOG.debug("Caching response {} with {} bytes", this.key, tee.getCount());
+                add(this.key, new Entry(target, tee.getCount(), getContinuationToken()));
+            } catch (RuntimeException e) {
+                LOG.warn("Error caching response in {}", target, e);
+                delete(target);
+            }
+        }
+
+        @Override
+        public void close() {
+            this.writer.close();
+        }
+    }
+
+    /**
+     * {@code OutputStream} that copies everything written to the client into a file. If the file can not be written
+     * or gets larger than the limit, copying is abandoned, but the client still receives the response.
+     */
+    private static class TeeOutputStream extends FilterOutputStream {
+        private final Path file;
+        private final long limit;
+        private OutputStream copy;
+        private boolean abandoned;
+        private long count;
+
+        TeeOutputStream(OutputStream out, Path file, long limit) {
+            super(out);
+            this.file = file;
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
+            copy(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+            copy(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.out.flush();
+        }
+
+        @Override
+        public void close() {
+            // the client stream is closed by the caller
+        }
+
+        /**
+         * Copy the bytes into the file.
+         *
+         * @param b   the bytes
+         * @param off the offset
+         * @param len the length
+         */
+        private void copy(byte[] b, int off, int len) {
+            if (this.abandoned) {
+                return;
+            }
+            this.count += len;
+            if (this.count > this.limit) {
+                LOG.debug("Not caching response larger than {} bytes", this.limit);
+                abandon();
+                return;
+            }
+            try {
+                if (this.copy == null) {
+                    this.copy = new BufferedOutputStream(Files.newOutputStream(this.file));
+                }
+                this.copy.write(b, off, len);
+            } catch (IOException e) {
+                LOG.warn("Error caching response in {}", this.file, e);
+                abandon();
+            }
+        }
+
+        /**
+         * Stop copying and close the file.
+         */
+        void abandon() {
+            this.abandoned = true;
+            closeCopy();
+        }
+
+        /**
+         * Close the file.
+         *
+         * @return if the file contains the complete response
+         */
+        boolean finish() {
+            if (this.abandoned) {
+                return false;
+            }
+            try {
+                if (this.copy == null) {
+                    // the response was empty
+                    this.copy = Files.newOutputStream(this.file);
+                }
+                this.copy.close();
+                this.copy = null;
+                return true;
+            } catch (IOException e) {
+                LOG.warn("Error caching response in {}", this.file, e);
+                abandon();
+                return false;
+            }
+        }
+
+        /**
+         * Get the number of bytes written.
+         *
+         * @return the number of bytes
+         */
+        long getCount() {
+            return this.count;
+        }
+
+        private void closeCopy() {
+            if (this.copy != null) {
+                try {
+                    this.copy.close();
+                } catch (IOException e) {
+                    LOG.warn("Error closing {}", this.file, e);
+                }
+                this.copy = null;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.n52.sensorweb.awi.data.FeatureCache;
+import org.n52.sensorweb.awi.data.entities.Sensor;
+
+/**
+ * Evaluates the sensor related parts of an {@link ObservationFilter} in memory, without accessing the database.
+ *
+ * @author Christian Autermann
+ */
+public class SensorMatcher {
+    private static final Pattern PROCEDURE_PATTERN = Pattern.compile("^([^:]+:[^:]+)(?::(.+))?$");
+    private final FeatureCache featureCache;
+
+    /**
+     * Create a new {@code SensorMatcher}.
+     *
+     * @param featureCache the feature cache
+     */
+    public SensorMatcher(FeatureCache featureCache) {
+        this.featureCache = Objects.requireNonNull(featureCache);
+    }
+
+    /**
+     * Get a predicate matching all sensors selected by the procedure, offering, observed property and feature
+     * filters.
+     *
+     * @param filter the filter
+     *
+     * @return the predicate
+     */
+    public Predicate<Sensor> getPredicate(ObservationFilter filter) {
+        Predicate<Sensor> predicate = sensor -> true;
+        if (!filter.getProcedures().isEmpty()) {
+            predicate = predicate.and(getProcedurePredicate(filter.getProcedures()));
+        }
+        if (!filter.getOfferings().isEmpty()) {
+            predicate = predicate.and(getProcedurePredicate(filter.getOfferings()));
+        }
+        if (!filter.getProperties().isEmpty()) {
+            predicate = predicate.and(sensor -> filter.getProperties().contains(sensor.getCode()));
+        }
+        if (!filter.getFeatures().isEmpty()) {
+            predicate = predicate.and(getFeaturePredicate(filter.getFeatures()));
+        }
+        return predicate;
+    }
+
+    /**
+     * Get a predicate matching all sensors of the specified features.
+     *
+     * @param features the feature identifiers
+     *
+     * @return the predicate
+     */
+    private Predicate<Sensor> getFeaturePredicate(Set<String> features) {
+        return sensor -> {
+            String platform = sensor.getDevice().getPlatform().getCode();
+            return features.contains(platform) ||
+                   this.featureCache.getFeatureIds(platform).stream().anyMatch(features::contains);
+        };
+    }
+
+    /**
+     * Get a predicate matching all sensors of the specified procedures.
+     *
+     * @param procedures the procedure identifiers
+     *
+     * @return the predicate
+     */
+    private static Predicate<Sensor> getProcedurePredicate(Set<String> procedures) {
+        return procedures.stream()
+                .map(PROCEDURE_PATTERN::matcher)
+                .filter(Matcher::matches)
+                .map(SensorMatcher::getProcedurePredicate)
+                .reduce(Predicate::or)
+                .orElse(sensor -> false);
+    }
+
+    /**
+     * Get a predicate matching all sensors of a single procedure.
+     *
+     * @param matcher the matched procedure identifier
+     *
+     * @return the predicate
+     */
+    private static Predicate<Sensor> getProcedurePredicate(Matcher matcher) {
+        String platform = matcher.group(1);
+        String device = matcher.group(2);
+        return sensor -> sensor.getDevice().getPlatform().getCode().equals(platform) &&
+                         (device == null || sensor.getDevice().getCode().equals(device));
+    }
+
+}
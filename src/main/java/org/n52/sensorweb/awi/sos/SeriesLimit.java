@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import java.util.Objects;
+
+/**
+ * Limits the values of every series to the first or latest values.
+ *
+ * @author Christian Autermann
+ */
+public final class SeriesLimit {
+    private final boolean latest;
+    private final int count;
+
+    /**
+     * Create a new {@code SeriesLimit}.
+     *
+     * @param latest if the latest instead of the first values should be selected
+     * @param count  the number of values per series
+     */
+    public SeriesLimit(boolean latest, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count has to be positive");
+        }
+        this.latest = latest;
+        this.count = count;
+    }
+
+    /**
+     * Checks if the latest values should be selected.
+     *
+     * @return {@code true} for the latest, {@code false} for the first values
+     */
+    public boolean isLatest() {
+        return latest;
+    }
+
+    /**
+     * Get the number of values per series.
+     *
+     * @return the number of values
+     */
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(latest, count);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final SeriesLimit other = (SeriesLimit) obj;
+        return this.latest == other.latest && this.count == other.count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SeriesLimit{%s %d}", latest ? "latest" : "first", count);
+    }
+}
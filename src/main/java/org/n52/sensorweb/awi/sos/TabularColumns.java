@@ -0,0 +1,192 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.UnaryOperator;
+
+import org.joda.time.DateTime;
+
+import org.n52.sensorweb.awi.data.DataPoint;
+import org.n52.sensorweb.awi.data.FeatureCache;
+import org.n52.sensorweb.awi.data.SensorCache;
+import org.n52.sensorweb.awi.data.entities.Device;
+import org.n52.sensorweb.awi.data.entities.Platform;
+import org.n52.sensorweb.awi.data.entities.Sensor;
+
+/**
+ * The columns of the rows written by the {@link TabularWriter tabular writers}. Every row consists of the time,
+ * procedure, observed property, feature of interest, value, unit and the position of mobile platforms. The columns
+ * that only depend on the sensor are formatted once per series.
+ *
+ * @author Christian Autermann
+ */
+final class TabularColumns {
+    static final String TIME = "time";
+    static final String PROCEDURE = "procedure";
+    static final String OBSERVED_PROPERTY = "observedProperty";
+    static final String FEATURE = "feature";
+    static final String VALUE = "value";
+    static final String UNIT = "unit";
+    static final String LONGITUDE = "longitude";
+    static final String LATITUDE = "latitude";
+    private static final String COUNT_UNIT = "1";
+    private final SensorCache sensorCache;
+    private final FeatureCache featureCache;
+    private final Optional<Aggregation> aggregation;
+    private final UnaryOperator<String> escape;
+    private final Map<Integer, Series> series = new HashMap<>();
+
+    /**
+     * Create a new {@code TabularColumns}.
+     *
+     * @param sensorCache  the sensor cache
+     * @param featureCache the feature cache
+     * @param aggregation  the aggregation of the data points
+     * @param escape       the function escaping the string columns of a series for the format
+     */
+    TabularColumns(SensorCache sensorCache, FeatureCache featureCache, Optional<Aggregation> aggregation,
+                   UnaryOperator<String> escape) {
+        this.sensorCache = Objects.requireNonNull(sensorCache);
+        this.featureCache = Objects.requireNonNull(featureCache);
+        this.aggregation = Objects.requireNonNull(aggregation);
+        this.escape = Objects.requireNonNull(escape);
+    }
+
+    /**
+     * Get the series of the specified sensor.
+     *
+     * @param id the sensor id
+     *
+     * @return the series
+     */
+    Series getSeries(int id) {
+        Series s = this.series.get(id);
+        if (s == null) {
+            Sensor sensor = this.sensorCache.getSensor(id)
+                    .orElseThrow(() -> new IllegalStateException("Unknown sensor " + id));
+            boolean count = this.aggregation.map(Aggregation::getFunction)
+                    .filter(f -> f == Aggregation.Function.COUNT).isPresent();
+            s = new Series(sensor, count ? COUNT_UNIT : sensor.getUnit(), this.escape);
+            this.series.put(id, s);
+        }
+        return s;
+    }
+
+    /**
+     * Get the feature of interest of the data point. The feature is not escaped.
+     *
+     * @param s    the series of the data point
+     * @param data the data point
+     *
+     * @return the feature identifier
+     */
+    String getFeature(Series s, DataPoint data) {
+        return this.featureCache.getFeatureId(s.getPlatform(), new DateTime(data.getTime()));
+    }
+
+    /**
+     * Get all features of interest the data points of the series may have.
+     *
+     * @param s the series
+     *
+     * @return the feature identifiers
+     */
+    List<String> getFeatures(Series s) {
+        List<String> features = new ArrayList<>();
+        features.add(s.getPlatform());
+        features.addAll(this.featureCache.getFeatureIds(s.getPlatform()));
+        return features;
+    }
+
+    /**
+     * The preformatted columns of a single sensor.
+     */
+    static final class Series {
+        private final String platform;
+        private final String procedure;
+        private final String observedProperty;
+        private final String unit;
+        private final boolean mobile;
+
+        /**
+         * Create a new {@code Series}.
+         *
+         * @param sensor the sensor
+         * @param unit   the unit of the values
+         * @param escape the function escaping the string columns
+         */
+        Series(Sensor sensor, String unit, UnaryOperator<String> escape) {
+            Device device = sensor.getDevice();
+            Platform p = device.getPlatform();
+            this.platform = p.getCode();
+            this.mobile = p.isMobile();
+            this.procedure = escape.apply(p.getCode() + ":" + device.getCode());
+            this.observedProperty = escape.apply(sensor.getCode());
+            this.unit = escape.apply(unit == null ? "" : unit);
+        }
+
+        /**
+         * Get the code of the platform. The code is not escaped.
+         *
+         * @return the platform code
+         */
+        String getPlatform() {
+            return platform;
+        }
+
+        /**
+         * Get the procedure identifier.
+         *
+         * @return the procedure
+         */
+        String getProcedure() {
+            return procedure;
+        }
+
+        /**
+         * Get the observed property identifier.
+         *
+         * @return the observed property
+         */
+        String getObservedProperty() {
+            return observedProperty;
+        }
+
+        /**
+         * Get the unit of the values.
+         *
+         * @return the unit
+         */
+        String getUnit() {
+            return unit;
+        }
+
+        /**
+         * Checks if the platform is mobile.
+         *
+         * @return if the platform is mobile
+         */
+        boolean isMobile() {
+            return mobile;
+        }
+    }
+}
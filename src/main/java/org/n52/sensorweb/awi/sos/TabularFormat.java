@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import org.n52.janmayen.http.MediaType;
+
+/**
+ * Tabular response formats of {@code GetObservation} that are written row by row from a
+ * {@link org.n52.sensorweb.awi.data.DataCursor} without creating O&amp;M observations.
+ *
+ * @author Christian Autermann
+ */
+public enum TabularFormat {
+    /**
+     * Comma separated values with a header line.
+     */
+    CSV(new MediaType("text", "csv")),
+    /**
+     * A JSON object per line.
+     */
+    NDJSON(new MediaType("application", "x-ndjson")),
+    /**
+     * An Apache Arrow IPC stream of columnar record batches.
+     */
+    ARROW(new MediaType("application", "vnd.apache.arrow.stream")),
+    /**
+     * An Apache Parquet file.
+     */
+    PARQUET(new MediaType("application", "vnd.apache.parquet"));
+
+    private final MediaType mediaType;
+
+    /**
+     * Create a new {@code TabularFormat}.
+     *
+     * @param mediaType the media type
+     */
+    TabularFormat(MediaType mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * Get the media type of this format.
+     *
+     * @return the media type
+     */
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Get the value of the {@code responseFormat} parameter that selects this format.
+     *
+     * @return the response format
+     */
+    public String getResponseFormat() {
+        return mediaType.toString();
+    }
+
+    /**
+     * Get the format for the value of a {@code responseFormat} parameter.
+     *
+     * @param responseFormat the response format
+     *
+     * @return the format or an empty optional if the response format is not tabular
+     */
+    public static Optional<TabularFormat> fromResponseFormat(String responseFormat) {
+        if (responseFormat == null) {
+            return Optional.empty();
+        }
+        return Arrays.stream(values()).filter(f -> f.getResponseFormat().equals(responseFormat)).findFirst();
+    }
+}
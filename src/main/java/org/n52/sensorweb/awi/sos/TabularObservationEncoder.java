@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.n52.janmayen.http.MediaType;
+import org.n52.shetland.ogc.SupportedType;
+import org.n52.shetland.ogc.om.ObservationType;
+import org.n52.shetland.ogc.om.OmConstants;
+import org.n52.shetland.ogc.sos.Sos2Constants;
+import org.n52.shetland.ogc.sos.SosConstants;
+import org.n52.shetland.ogc.sos.response.GetObservationResponse;
+import org.n52.svalbard.encode.EncoderKey;
+import org.n52.svalbard.encode.EncodingContext;
+import org.n52.svalbard.encode.ObservationEncoder;
+import org.n52.svalbard.encode.OperationResponseEncoderKey;
+import org.n52.svalbard.encode.exception.EncodingException;
+import org.n52.svalbard.encode.exception.UnsupportedEncoderInputException;
+
+/**
+ * Encoder for {@link TabularObservationResponse tabular GetObservation responses}. The encoder only hands the
+ * {@link TabularWriter} of the response to the {@link TabularObservationResponseWriter} that streams the
+ * rows to the client.
+ *
+ * @author Christian Autermann
+ */
+public class TabularObservationEncoder implements ObservationEncoder<TabularWriter, GetObservationResponse> {
+    private final TabularFormat format;
+    private final Set<EncoderKey> keys;
+
+    /**
+     * Create a new {@code TabularObservationEncoder}.
+     *
+     * @param format the format to encode
+     */
+    public TabularObservationEncoder(TabularFormat format) {
+        this.format = Objects.requireNonNull(format);
+        this.keys = Collections.singleton(new OperationResponseEncoderKey(
+                SosConstants.SOS, Sos2Constants.SERVICEVERSION, SosConstants.Operations.GetObservation,
+                format.getMediaType()));
+    }
+
+    @Override
+    public Set<EncoderKey> getKeys() {
+        return Collections.unmodifiableSet(this.keys);
+    }
+
+    @Override
+    public MediaType getContentType() {
+        return this.format.getMediaType();
+    }
+
+    @Override
+    public TabularWriter encode(GetObservationResponse response) throws EncodingException {
+        if (response instanceof TabularObservationResponse) {
+            TabularWriter writer = ((TabularObservationResponse) response).getWriter();
+            if (writer.getFormat() == this.format) {
+                return writer;
+            }
+        }
+        throw new UnsupportedEncoderInputException(this, response);
+    }
+
+    @Override
+    public TabularWriter encode(GetObservationResponse response, EncodingContext ctx)
+            throws EncodingException {
+        return encode(response);
+    }
+
+    @Override
+    public boolean isObservationAndMeasurmentV20Type() {
+        return false;
+    }
+
+    @Override
+    public boolean shouldObservationsWithSameXBeMerged() {
+        return false;
+    }
+
+    @Override
+    public boolean supportsResultStreamingForMergedValues() {
+        return false;
+    }
+
+    @Override
+    public Set<String> getSupportedResponseFormats(String service, String version) {
+        if (SosConstants.SOS.equals(service) && Sos2Constants.SERVICEVERSION.equals(version)) {
+            return Collections.singleton(this.format.getResponseFormat());
+        }
+        return Collections.emptySet();
+    }
+
+    @Override
+    public Map<String, Set<SupportedType>> getSupportedResponseFormatObservationTypes() {
+        return Collections.singletonMap(this.format.getResponseFormat(), Collections.singleton(
+                                        new ObservationType(OmConstants.OBS_TYPE_MEASUREMENT)));
+    }
+}
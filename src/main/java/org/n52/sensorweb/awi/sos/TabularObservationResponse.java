@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import java.util.Objects;
+
+import org.n52.shetland.ogc.om.ObservationStream;
+import org.n52.shetland.ogc.sos.response.GetObservationResponse;
+
+/**
+ * {@code GetObservation} response in a {@link TabularFormat} that is encoded by the
+ * {@link TabularObservationEncoder}. The response holds no observations, its rows are written directly by the
+ * {@link TabularWriter}.
+ *
+ * @author Christian Autermann
+ */
+public class TabularObservationResponse extends GetObservationResponse {
+    private final TabularWriter writer;
+
+    /**
+     * Create a new {@code TabularObservationResponse}.
+     *
+     * @param service the service
+     * @param version the version
+     * @param writer  the writer of the rows
+     */
+    public TabularObservationResponse(String service, String version, TabularWriter writer) {
+        this.writer = Objects.requireNonNull(writer);
+        setService(service);
+        setVersion(version);
+        setResponseFormat(writer.getFormat().getResponseFormat());
+        setContentType(writer.getFormat().getMediaType());
+        setObservationCollection(ObservationStream.empty());
+    }
+
+    /**
+     * Get the writer of the rows of this response.
+     *
+     * @return the writer
+     */
+    public TabularWriter getWriter() {
+        return writer;
+    }
+
+    @Override
+    public void close() {
+        this.writer.close();
+        super.close();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Set;
+
+import org.hibernate.HibernateException;
+
+import org.n52.iceland.coding.encode.ResponseProxy;
+import org.n52.iceland.coding.encode.ResponseWriter;
+import org.n52.iceland.coding.encode.ResponseWriterKey;
+import org.n52.janmayen.http.MediaType;
+import org.n52.svalbard.encode.exception.EncodingException;
+
+/**
+ * {@code ResponseWriter} that streams the rows of a {@link TabularWriter} to the client. The continuation
+ * token of a truncated page is sent in the {@value #CONTINUATION_TOKEN_HEADER} header, as tabular formats have no
+ * place for response extensions.
+ *
+ * @author Christian Autermann
+ */
+public class TabularObservationResponseWriter implements ResponseWriter<TabularWriter> {
+    /**
+     * The header containing the continuation token referencing the next page.
+     */
+    public static final String CONTINUATION_TOKEN_HEADER = "X-Continuation-Token";
+    private static final Set<ResponseWriterKey> KEYS = Collections.singleton(
+            new ResponseWriterKey(TabularWriter.class));
+    private MediaType contentType;
+
+    @Override
+    public Set<ResponseWriterKey> getKeys() {
+        return Collections.unmodifiableSet(KEYS);
+    }
+
+    @Override
+    public MediaType getContentType() {
+        return this.contentType;
+    }
+
+    @Override
+    public void setContentType(MediaType contentType) {
+        this.contentType = contentType;
+    }
+
+    @Override
+    public void write(TabularWriter writer, OutputStream out, ResponseProxy responseProxy)
+            throws IOException, EncodingException {
+        if (responseProxy != null) {
+            writer.getContinuationToken()
+                    .ifPresent(token -> responseProxy.addHeader(CONTINUATION_TOKEN_HEADER, token));
+        }
+        try {
+            writer.write(out);
+        } catch (HibernateException e) {
+            throw new EncodingException("Error reading the values", e);
+        }
+    }
+
+    @Override
+    public boolean supportsGZip(TabularWriter writer) {
+        return true;
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import static org.n52.sensorweb.awi.sos.TabularColumns.FEATURE;
+import static org.n52.sensorweb.awi.sos.TabularColumns.LATITUDE;
+import static org.n52.sensorweb.awi.sos.TabularColumns.LONGITUDE;
+import static org.n52.sensorweb.awi.sos.TabularColumns.OBSERVED_PROPERTY;
+import static org.n52.sensorweb.awi.sos.TabularColumns.PROCEDURE;
+import static org.n52.sensorweb.awi.sos.TabularColumns.TIME;
+import static org.n52.sensorweb.awi.sos.TabularColumns.UNIT;
+import static org.n52.sensorweb.awi.sos.TabularColumns.VALUE;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.UnaryOperator;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import org.n52.sensorweb.awi.data.DataCursor;
+import org.n52.sensorweb.awi.data.DataPoint;
+import org.n52.sensorweb.awi.data.FeatureCache;
+import org.n52.sensorweb.awi.data.SensorCache;
+
+/**
+ * Writes the {@link DataPoint data points} of a {@link DataCursor} as rows of a {@link TabularFormat} directly to an
+ * output stream. Every row consists of the {@link TabularColumns columns} of a data point. The time of aggregated data
+ * points is the begin of their time bucket. The Arrow and Parquet formats are written by
+ * {@link ArrowObservationWriter} and {@link ParquetObservationWriter}.
+ *
+ * The cursor is consumed and closed by {@link #write(OutputStream)}, instances can only be written once.
+ *
+ * @author Christian Autermann
+ */
+public class TabularObservationWriter implements TabularWriter {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final String[] COLUMNS = { TIME, PROCEDURE, OBSERVED_PROPERTY, FEATURE, VALUE, UNIT,
+                                              LONGITUDE, LATITUDE };
+    private static final char CSV_SEPARATOR = ',';
+    private static final char CSV_QUOTE = '"';
+    private static final char LINE_SEPARATOR = '\n';
+    private final DataCursor cursor;
+    private final TabularColumns columns;
+    private final TabularFormat format;
+    private final Optional<String> continuationToken;
+
+    /**
+     * Create a new {@code TabularObservationWriter}.
+     *
+     * @param cursor            the cursor of the data points
+     * @param sensorCache       the sensor cache
+     * @param featureCache      the feature cache
+     * @param aggregation       the aggregation of the data points
+     * @param format            the format of the rows, {@link TabularFormat#CSV} or {@link TabularFormat#NDJSON}
+     * @param continuationToken the token referencing the next page
+     */
+    public TabularObservationWriter(DataCursor cursor, SensorCache sensorCache, FeatureCache featureCache,
+                                    Optional<Aggregation> aggregation, TabularFormat format,
+                                    Optional<String> continuationToken) {
+        this.cursor = Objects.requireNonNull(cursor);
+        this.format = Objects.requireNonNull(format);
+        this.continuationToken = Objects.requireNonNull(continuationToken);
+        this.columns = new TabularColumns(sensorCache, featureCache, aggregation,
+                                          format == TabularFormat.CSV
+                                                  ? TabularObservationWriter::escapeCSV
+                                                  : UnaryOperator.identity());
+    }
+
+    @Override
+    public TabularFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public Optional<String> getContinuationToken() {
+        return continuationToken;
+    }
+
+    @Override
+    public void write(OutputStream out) throws IOException {
+        try {
+            switch (this.format) {
+                case CSV:
+                    writeCSV(out);
+                    break;
+                case NDJSON:
+                    writeNDJSON(out);
+                    break;
+                default:
+                    throw new IllegalStateException("Unsupported format " + this.format);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() {
+        this.cursor.close();
+    }
+
+    /**
+     * Write the data points as comma separated values with a header line.
+     *
+     * @param out the output stream
+     *
+     * @throws IOException if writing fails
+     */
+    private void writeCSV(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        for (int i = 0; i < COLUMNS.length; ++i) {
+            if (i > 0) {
+                writer.write(CSV_SEPARATOR);
+            }
+            writer.write(COLUMNS[i]);
+        }
+        writer.write(LINE_SEPARATOR);
+        while (this.cursor.hasNext()) {
+            DataPoint data = this.cursor.next();
+            TabularColumns.Series s = this.columns.getSeries(data.getSensor());
+            writer.write(formatTime(data));
+            writer.write(CSV_SEPARATOR);
+            writer.write(s.getProcedure());
+            writer.write(CSV_SEPARATOR);
+            writer.write(s.getObservedProperty());
+            writer.write(CSV_SEPARATOR);
+            writer.write(escapeCSV(this.columns.getFeature(s, data)));
+            writer.write(CSV_SEPARATOR);
+            writer.write(Double.toString(data.getValue()));
+            writer.write(CSV_SEPARATOR);
+            writer.write(s.getUnit());
+            writer.write(CSV_SEPARATOR);
+            if (s.isMobile() && data.hasLocation()) {
+                writer.write(Double.toString(data.getLongitude()));
+                writer.write(CSV_SEPARATOR);
+                writer.write(Double.toString(data.getLatitude()));
+            } else {
+                writer.write(CSV_SEPARATOR);
+            }
+            writer.write(LINE_SEPARATOR);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Write the data points as a JSON object per line.
+     *
+     * @param out the output stream
+     *
+     * @throws IOException if writing fails
+     */
+    private void writeNDJSON(OutputStream out) throws IOException {
+        JsonGenerator generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+        while (this.cursor.hasNext()) {
+            DataPoint data = this.cursor.next();
+            TabularColumns.Series s = this.columns.getSeries(data.getSensor());
+            generator.writeStartObject();
+            generator.writeStringField(TIME, formatTime(data));
+            generator.writeStringField(PROCEDURE, s.getProcedure());
+            generator.writeStringField(OBSERVED_PROPERTY, s.getObservedProperty());
+            generator.writeStringField(FEATURE, this.columns.getFeature(s, data));
+            generator.writeNumberField(VALUE, data.getValue());
+            generator.writeStringField(UNIT, s.getUnit());
+            if (s.isMobile() && data.hasLocation()) {
+                generator.writeNumberField(LONGITUDE, data.getLongitude());
+                generator.writeNumberField(LATITUDE, data.getLatitude());
+            }
+            generator.writeEndObject();
+            generator.writeRaw(LINE_SEPARATOR);
+        }
+        generator.flush();
+    }
+
+    /**
+     * Format the time of the data point as an ISO 8601 UTC time stamp.
+     *
+     * @param data the data point
+     *
+     * @return the time stamp
+     */
+    private static String formatTime(DataPoint data) {
+        return Instant.ofEpochMilli(data.getTime()).toString();
+    }
+
+    /**
+     * Quote the value if it contains a separator, quote or line break.
+     *
+     * @param value the value
+     *
+     * @return the CSV field
+     */
+    private static String escapeCSV(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(CSV_SEPARATOR) < 0 && value.indexOf(CSV_QUOTE) < 0 &&
+            value.indexOf(LINE_SEPARATOR) < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        String quote = String.valueOf(CSV_QUOTE);
+        return quote + value.replace(quote, quote + quote) + quote;
+    }
+}
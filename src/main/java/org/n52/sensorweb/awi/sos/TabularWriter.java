@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Writes the rows of a tabular {@code GetObservation} response. Implementations hold the resources producing the
+ * rows, that are released by {@link #close()} even if the rows are never written.
+ *
+ * @author Christian Autermann
+ */
+public interface TabularWriter extends AutoCloseable {
+
+    /**
+     * Get the format of the rows.
+     *
+     * @return the format
+     */
+    TabularFormat getFormat();
+
+    /**
+     * Get the continuation token referencing the next page, if the rows are a truncated page.
+     *
+     * @return the continuation token
+     */
+    Optional<String> getContinuationToken();
+
+    /**
+     * Write all rows to the output stream and release the resources of this writer.
+     *
+     * @param out the output stream
+     *
+     * @throws IOException if writing fails
+     */
+    void write(OutputStream out) throws IOException;
+
+    /**
+     * Releases the resources held by this writer. Calling this method more than once has no effect.
+     */
+    @Override
+    void close();
+
+    /**
+     * Returns a writer for the same rows that additionally runs the action when it is closed.
+     *
+     * @param action the action
+     *
+     * @return the writer
+     */
+    default TabularWriter onClose(Runnable action) {
+        Objects.requireNonNull(action);
+        TabularWriter writer = this;
+        return new TabularWriter() {
+            @Override
+            public TabularFormat getFormat() {
+                return writer.getFormat();
+            }
+
+            @Override
+            public Optional<String> getContinuationToken() {
+                return writer.getContinuationToken();
+            }
+
+            @Override
+            public void write(OutputStream out) throws IOException {
+                writer.write(out);
+            }
+
+            @Override
+            public void close() {
+                try {
+                    writer.close();
+                } finally {
+                    action.run();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.LongPredicate;
+
+import org.n52.shetland.ogc.filter.TemporalFilter;
+import org.n52.shetland.ogc.gml.time.Time;
+import org.n52.shetland.ogc.gml.time.TimeInstant;
+import org.n52.shetland.ogc.gml.time.TimePeriod;
+import org.n52.sos.ds.hibernate.util.TemporalRestrictions;
+
+/**
+ * Evaluates temporal filters on the time of data points in memory. Only the operators that are commonly used for
+ * time instants are supported: {@code During}, {@code After}, {@code Before} and {@code TEquals}. The semantics are
+ * the same as the database restrictions for a time instant property.
+ *
+ * @author Christian Autermann
+ */
+public final class TemporalFilterMatcher implements LongPredicate {
+    private final LongPredicate predicate;
+    private final long begin;
+    private final long end;
+    private final boolean beginInclusive;
+    private final boolean endInclusive;
+
+    /**
+     * Create a new {@code TemporalFilterMatcher}.
+     *
+     * @param predicate      the predicate
+     * @param begin          the earliest time that may match
+     * @param beginInclusive if the begin itself may match
+     * @param end            the latest time that may match
+     * @param endInclusive   if the end itself may match
+     */
+    private TemporalFilterMatcher(LongPredicate predicate, long begin, boolean beginInclusive,
+                                  long end, boolean endInclusive) {
+        this.predicate = predicate;
+        this.begin = begin;
+        this.beginInclusive = beginInclusive;
+        this.end = end;
+        this.endInclusive = endInclusive;
+    }
+
+    @Override
+    public boolean test(long time) {
+        return this.predicate.test(time);
+    }
+
+    /**
+     * Get the earliest time that may match the filters.
+     *
+     * @return the time in milliseconds since the epoch or {@link Long#MIN_VALUE}
+     */
+    public long getBegin() {
+        return begin;
+    }
+
+    /**
+     * Get the latest time that may match the filters.
+     *
+     * @return the time in milliseconds since the epoch or {@link Long#MAX_VALUE}
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Checks if the {@linkplain #getBegin() begin} itself may match the filters.
+     *
+     * @return if the begin is inclusive
+     */
+    public boolean isBeginInclusive() {
+        return beginInclusive;
+    }
+
+    /**
+     * Checks if the {@linkplain #getEnd() end} itself may match the filters.
+     *
+     * @return if the end is inclusive
+     */
+    public boolean isEndInclusive() {
+        return endInclusive;
+    }
+
+    /**
+     * Create a matcher for the disjunction of the supplied filters.
+     *
+     * @param filters the temporal filters
+     *
+     * @return the matcher or an empty {@code Optional} if there are no filters or one of them is not supported
+     */
+    public static Optional<TemporalFilterMatcher> of(Collection<TemporalFilter> filters) {
+        if (filters.isEmpty()) {
+            return Optional.empty();
+        }
+        List<TemporalFilterMatcher> matchers = new ArrayList<>(filters.size());
+        for (TemporalFilter filter : filters) {
+            Optional<TemporalFilterMatcher> matcher = of(filter);
+            if (!matcher.isPresent()) {
+                return Optional.empty();
+            }
+            matchers.add(matcher.get());
+        }
+        LongPredicate predicate = matchers.stream().map(m -> (LongPredicate) m)
+                .reduce(LongPredicate::or).get();
+        long begin = matchers.stream().mapToLong(TemporalFilterMatcher::getBegin).min().getAsLong();
+        long end = matchers.stream().mapToLong(TemporalFilterMatcher::getEnd).max().getAsLong();
+        boolean beginInclusive = matchers.stream()
+                .anyMatch(m -> m.getBegin() == begin && m.isBeginInclusive());
+        boolean endInclusive = matchers.stream()
+                .anyMatch(m -> m.getEnd() == end && m.isEndInclusive());
+        return Optional.of(new TemporalFilterMatcher(predicate, begin, beginInclusive, end, endInclusive));
+    }
+
+    /**
+     * Create a matcher for a single filter.
+     *
+     * @param filter the temporal filter
+     *
+     * @return the matcher or an empty {@code Optional} if the filter is not supported
+     */
+    private static Optional<TemporalFilterMatcher> of(TemporalFilter filter) {
+        if (!filter.getValueReference().equals(TemporalRestrictions.PHENOMENON_TIME_VALUE_REFERENCE) &&
+            !filter.getValueReference().equals(TemporalRestrictions.RESULT_TIME_VALUE_REFERENCE)) {
+            return Optional.empty();
+        }
+        Time time = filter.getTime();
+        long start;
+        long stop;
+        if (time instanceof TimeInstant && ((TimeInstant) time).getValue() != null) {
+            start = stop = ((TimeInstant) time).getValue().getMillis();
+        } else if (time instanceof TimePeriod &&
+                   ((TimePeriod) time).getStart() != null && ((TimePeriod) time).getEnd() != null) {
+            start = ((TimePeriod) time).getStart().getMillis();
+            stop = ((TimePeriod) time).getEnd().getMillis();
+        } else {
+            return Optional.empty();
+        }
+        switch (filter.getOperator()) {
+            case TM_During:
+                return Optional.of(new TemporalFilterMatcher(t -> t > start && t < stop, start, false, stop, false));
+            case TM_After:
+                return Optional.of(new TemporalFilterMatcher(t -> t > stop, stop, false, Long.MAX_VALUE, true));
+            case TM_Before:
+                return Optional.of(new TemporalFilterMatcher(t -> t < start, Long.MIN_VALUE, true, start, false));
+            case TM_Equals:
+                if (start != stop) {
+                    return Optional.empty();
+                }
+                return Optional.of(new TemporalFilterMatcher(t -> t == start, start, true, start, true));
+            default:
+                return Optional.empty();
+        }
+    }
+}
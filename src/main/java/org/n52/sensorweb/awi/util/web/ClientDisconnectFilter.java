@@ -0,0 +1,231 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.util.web;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Servlet {@code Filter} that detects clients that disconnect while the response is written. Code executed for the
+ * request can register a callback using {@link #onDisconnect(Runnable)}, that is invoked as soon as writing to the
+ * response fails, e.g. to cancel the database statements that are still producing the response.
+ *
+ * The callbacks are invoked by the thread that writes the response, before the error is passed on.
+ *
+ * Callbacks registered using {@link #onComplete(Runnable)} are invoked after the request was processed, whether the
+ * response was written completely, failed or was never written, e.g. to release resources that are otherwise only
+ * released by consuming the response.
+ *
+ * The Servlet API offers no way to notice a closed connection without writing to it, so a disconnect is only detected
+ * by the next write or flush. While the response is not written, e.g. because a page is read completely before the
+ * response is created or a cursor blocks waiting for the next row of a slow query, the work continues until the
+ * next row is written or the statement timeout expires.
+ *
+ * @author Christian Autermann
+ */
+public class ClientDisconnectFilter implements Filter {
+    private static final Logger LOG = LoggerFactory.getLogger(ClientDisconnectFilter.class);
+    private static final ThreadLocal<List<Runnable>> CALLBACKS = new ThreadLocal<>();
+    private static final ThreadLocal<List<Runnable>> COMPLETIONS = new ThreadLocal<>();
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+        // nothing to configure
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!(response instanceof HttpServletResponse)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        List<Runnable> callbacks = new ArrayList<>(1);
+        List<Runnable> completions = new ArrayList<>(2);
+        CALLBACKS.set(callbacks);
+        COMPLETIONS.set(completions);
+        try {
+            chain.doFilter(request, new DisconnectAwareResponse((HttpServletResponse) response, callbacks));
+        } finally {
+            CALLBACKS.remove();
+            COMPLETIONS.remove();
+            completed(completions);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        // nothing to release
+    }
+
+    /**
+     * Register a callback that is invoked if the client of the current request disconnects. Outside of a request
+     * passing this filter the callback is ignored.
+     *
+     * @param callback the callback
+     */
+    public static void onDisconnect(Runnable callback) {
+        List<Runnable> callbacks = CALLBACKS.get();
+        if (callbacks != null) {
+            callbacks.add(callback);
+        }
+    }
+
+    /**
+     * Register a callback that is invoked after the current request was processed. The callbacks are invoked in the
+     * reverse order of their registration. Outside of a request passing this filter the callback is ignored.
+     *
+     * @param callback the callback
+     */
+    public static void onComplete(Runnable callback) {
+        List<Runnable> completions = COMPLETIONS.get();
+        if (completions != null) {
+            completions.add(callback);
+        }
+    }
+
+    /**
+     * Invoke the completion callbacks of a request.
+     *
+     * @param completions the callbacks
+     */
+    private static void completed(List<Runnable> completions) {
+        for (int i = completions.size() - 1; i >= 0; --i) {
+            try {
+                completions.get(i).run();
+            } catch (RuntimeException e) {
+                LOG.warn("Error completing request", e);
+            }
+        }
+    }
+
+    /**
+     * Invoke and remove the callbacks of a request.
+     *
+     * @param callbacks the callbacks
+     * @param cause     the error writing the response
+     */
+    private static void disconnected(List<Runnable> callbacks, IOException cause) {
+        if (callbacks.isEmpty()) {
+            return;
+        }
+        LOG.debug("Client disconnected: {}", cause.getMessage());
+        List<Runnable> pending = new ArrayList<>(callbacks);
+        callbacks.clear();
+        for (Runnable callback : pending) {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                LOG.warn("Error handling client disconnect", e);
+            }
+        }
+    }
+
+    /**
+     * {@code HttpServletResponse} that wraps the output stream to detect write errors.
+     */
+    private static class DisconnectAwareResponse extends HttpServletResponseWrapper {
+        private final List<Runnable> callbacks;
+        private ServletOutputStream stream;
+
+        DisconnectAwareResponse(HttpServletResponse response, List<Runnable> callbacks) {
+            super(response);
+            this.callbacks = callbacks;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (this.stream == null) {
+                this.stream = new DisconnectAwareOutputStream(super.getOutputStream(), this.callbacks);
+            }
+            return this.stream;
+        }
+    }
+
+    /**
+     * {@code ServletOutputStream} that invokes the callbacks if writing or flushing fails.
+     */
+    private static class DisconnectAwareOutputStream extends ServletOutputStream {
+        private final ServletOutputStream delegate;
+        private final List<Runnable> callbacks;
+
+        DisconnectAwareOutputStream(ServletOutputStream delegate, List<Runnable> callbacks) {
+            this.delegate = delegate;
+            this.callbacks = callbacks;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                this.delegate.write(b);
+            } catch (IOException e) {
+                disconnected(this.callbacks, e);
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                this.delegate.write(b, off, len);
+            } catch (IOException e) {
+                disconnected(this.callbacks, e);
+                throw e;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                this.delegate.flush();
+            } catch (IOException e) {
+                disconnected(this.callbacks, e);
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.delegate.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return this.delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            this.delegate.setWriteListener(listener);
+        }
+    }
+
+}
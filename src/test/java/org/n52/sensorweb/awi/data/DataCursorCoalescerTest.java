@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.data;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.hibernate.HibernateException;
+import org.junit.Test;
+
+/**
+ * Tests for {@link DataCursorCoalescer}.
+ *
+ * @author Christian Autermann
+ */
+public class DataCursorCoalescerTest {
+    private static final String KEY = "key";
+    private static final int CAPACITY = 10;
+    private static final long TIMEOUT = 100;
+    private static final int SIZE = 2000;
+
+    /**
+     * Identical requests read the values of a single source.
+     */
+    @Test(timeout = 10000)
+    public void testJoinedCursors() {
+        AtomicInteger opened = new AtomicInteger();
+        DataCursorCoalescer coalescer = new DataCursorCoalescer(CAPACITY, TIMEOUT);
+        DataCursor first = coalescer.open(KEY, () -> open(opened));
+        DataCursor second = coalescer.open(KEY, () -> open(opened));
+
+        List<Long> a = new ArrayList<>(SIZE);
+        List<Long> b = new ArrayList<>(SIZE);
+        while (first.hasNext() | second.hasNext()) {
+            if (first.hasNext()) {
+                a.add(first.next().getTime());
+            }
+            if (second.hasNext()) {
+                b.add(second.next().getTime());
+            }
+        }
+        assertThat(a, is(getTimes()));
+        assertThat(b, is(getTimes()));
+        assertThat(opened.get(), is(1));
+    }
+
+    /**
+     * A joined cursor that is never read may not block the other cursors and fails once it is read.
+     */
+    @Test(timeout = 10000)
+    public void testUnreadCursor() {
+        AtomicInteger opened = new AtomicInteger();
+        DataCursorCoalescer coalescer = new DataCursorCoalescer(CAPACITY, TIMEOUT);
+        DataCursor first = coalescer.open(KEY, () -> open(opened));
+        DataCursor unread = coalescer.open(KEY, () -> open(opened));
+
+        List<Long> times = new ArrayList<>(SIZE);
+        while (first.hasNext()) {
+            times.add(first.next().getTime());
+        }
+        assertThat(times, is(getTimes()));
+        assertThat(opened.get(), is(1));
+
+        boolean failed = false;
+        try {
+            unread.hasNext();
+        } catch (HibernateException e) {
+            failed = true;
+        }
+        assertThat(failed, is(true));
+        unread.close();
+    }
+
+    /**
+     * Open the source cursor.
+     *
+     * @param opened the counter of opened sources
+     *
+     * @return the cursor
+     */
+    private static DataCursor open(AtomicInteger opened) {
+        opened.incrementAndGet();
+        return new ListDataCursor(getTimes().stream()
+                .map(time -> new DataPoint(1, time, time, 0, 0))
+                .collect(toList()));
+    }
+
+    /**
+     * Get the times of the values of the source.
+     *
+     * @return the times
+     */
+    private static List<Long> getTimes() {
+        return IntStream.range(0, SIZE).mapToObj(Long::valueOf).collect(toList());
+    }
+}
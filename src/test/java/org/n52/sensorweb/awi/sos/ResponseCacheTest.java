@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 52°North GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.sensorweb.awi.sos;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for {@link ResponseCache}.
+ *
+ * @author Christian Autermann
+ */
+public class ResponseCacheTest {
+    private static final String KEY = "key";
+    private static final String BODY = "time,value\n2016-01-01T00:00:00Z,1.0\n";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Two identical requests that complete after another may not remove the entry of the first one.
+     *
+     * @throws IOException if writing fails
+     */
+    @Test
+    public void testIdenticalResponses() throws IOException {
+        ResponseCache cache = new ResponseCache(folder.getRoot().toPath(), 1024, 0);
+
+        TabularWriter first = cache.put(KEY, new StringTabularWriter(BODY));
+        TabularWriter second = cache.put(KEY, new StringTabularWriter(BODY));
+        assertThat(write(first), is(BODY));
+        assertThat(write(second), is(BODY));
+
+        Optional<TabularWriter> cached = cache.get(KEY, TabularFormat.CSV);
+        assertThat(cached.isPresent(), is(true));
+        assertThat(write(cached.get()), is(BODY));
+
+        // the entry is still readable after it was served
+        assertThat(write(cache.get(KEY, TabularFormat.CSV).get()), is(BODY));
+    }
+
+    /**
+     * Write the response of a writer.
+     *
+     * @param writer the writer
+     *
+     * @return the response
+     *
+     * @throws IOException if writing fails
+     */
+    private static String write(TabularWriter writer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            writer.write(out);
+        } finally {
+            writer.close();
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * {@code TabularWriter} writing a fixed response.
+     */
+    private static class StringTabularWriter implements TabularWriter {
+        private final String body;
+
+        StringTabularWriter(String body) {
+            this.body = body;
+        }
+
+        @Override
+        public TabularFormat getFormat() {
+            return TabularFormat.CSV;
+        }
+
+        @Override
+        public Optional<String> getContinuationToken() {
+            return Optional.empty();
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            out.write(this.body.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}